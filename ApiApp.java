@@ -1,18 +1,14 @@
 package cs1302.api;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
@@ -23,18 +19,24 @@ import com.google.gson.GsonBuilder;
 
 import cs1302.api.ITunesApi.ItunesResult;
 import cs1302.api.MusixMatchApi.Track;
+import cs1302.api.OpenLibrarySearchApi.OpenLibraryDoc;
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.beans.Observable;
 import javafx.beans.property.ObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
 import javafx.concurrent.Task;
 import javafx.geometry.Insets;
-import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextField;
@@ -45,8 +47,6 @@ import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
-import javafx.scene.text.Font;
-import javafx.scene.text.FontWeight;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
 import javafx.stage.Modality;
@@ -61,15 +61,38 @@ import javafx.stage.Stage;
  */
 public class ApiApp extends Application {
 
-	/** HTTP client. */
-	public static final HttpClient HTTP_CLIENT = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
-			.followRedirects(HttpClient.Redirect.NORMAL) // always redirects, except from HTTPS to HTTP
-			.build(); // builds and returns a HttpClient object
+	/** Settings from resources/config.properties, overridable with cs1302.api.* system properties. */
+	public static final AppConfig CONFIG = new AppConfig(new File("resources/config.properties"));
+
+	/** Recorded stand-in for the APIs with {@code offline=true}, started before any endpoint is read. */
+	static final MockApiServer MOCK_SERVER = CONFIG.offline() ? MockApiServer.startOffline(CONFIG) : null;
+
+	/** HTTP client, with the timeouts, threads and keep-alive of the {@code http.*} settings. */
+	public static final TunedHttpClient HTTP_CLIENT = TunedHttpClient.create(CONFIG);
 
 	/** Google {@code Gson} object for parsing JSON-formatted strings. */
-	public static Gson GSON = new GsonBuilder().setPrettyPrinting() // enable nice output when printing
+	public static Gson GSON = new GsonBuilder() // compact, responses are parsed far more often than printed
 			.create(); // builds and returns a Gson object
 
+	/** Cache of API response bodies, shared by the iTunes and musixmatch lookups. */
+	public static final ResponseCache RESPONSE_CACHE = CONFIG.responseCacheEnabled()
+			? new ResponseCache(new File("cache"))
+			: ResponseCache.disabled(); // benchmarks measure the uncached path
+
+	/** Cache shared with the other apps and workers, per {@code shared.cache}; asked before the APIs. */
+	public static final SharedCacheClient SHARED_CACHE = SharedCacheClient.create(CONFIG);
+
+	/** Sends, caches and decodes the requests of every provider. */
+	public static final ClientCore CLIENT_CORE = new ClientCore(HTTP_CLIENT, RESPONSE_CACHE, SHARED_CACHE);
+
+	/** Artwork decoded at the list's 128x150 fit size, 32 MB of pixels in memory and 64 MB on disk. */
+	public static final ArtworkCache ARTWORK_CACHE = new ArtworkCache(new File("cache/artwork"), 128, 150, 32L << 20,
+			64L << 20);
+
+	/** Metrics snapshot, rewritten every {@code cs1302.api.metrics.interval} seconds. */
+	private static final File METRICS_FILE = new File("cache/metrics.json");
+	private static final Log LOG = Log.get(ApiApp.class);
+
 	private Stage stage;
 	private Scene scene;
 	private VBox root;
@@ -78,18 +101,68 @@ public class ApiApp extends Application {
 	private TextField queryTermField;
 	private static Button getImages;
 	private TextFlow messageBar;
-	private ScrollPane mainContent;
-	private VBox itemScreen;
+	private ListView<TrackRow> trackList; // only the visible rows have nodes
+	private final ObservableList<TrackRow> trackRows = FXCollections
+			.observableArrayList(row -> new Observable[] { row.trackProperty() }); // a landing rating re-ranks its row
+	private final SortedList<TrackRow> rankedRows = new SortedList<TrackRow>(trackRows,
+			RankMode.RELEVANCE.comparator()); // what the list shows, re-sorted in place
+	private ComboBox<RankMode> rankBox;
 	private HBox footer;
 	private ProgressBar progressBar;
 	private HBox copyright;
 	private Label copyrightTextiTunes;
 	private Label copyrightTextMusixMatch;
 	private static final String DEFAULT_STRING = "dua lipa";
-	private static final int IMAGE_COUNT = 50;
-	public static final String LIMIT = "50"; // limit on API to restrict response size
-	private List<HBox> images = new ArrayList<HBox>(); // List to store the tracks after downloading from URIs
-	private List<ItunesResult> results = new ArrayList<ItunesResult>();
+	private static final int IMAGE_COUNT = 50; // local matches shown at once, iTunes results page in on scroll
+	private static final int MIN_RESULTS = 5; // fewer distinct results than this is reported as an error
+	private static final int MIN_TYPED = 3; // shorter queries are not searched while typing
+	private static final int PREFETCH_ROWS = 10; // the next page loads once this close to the end
+	private static final int MAX_TOP = 10_000; // most tracks a "top:N" query lists
+	public static final String LIMIT = String.valueOf(CONFIG.searchLimit()); // limit on API to restrict response size
+
+	/** Runs the searches, a new search cancels the one still running. */
+	private static final SearchExecutor SEARCH_EXECUTOR = new SearchExecutor();
+	private static final MusixMatchApi MUSIX_MATCH_API = new MusixMatchApi();
+	private static final OpenLibrarySearchApi OPEN_LIBRARY_API = new OpenLibrarySearchApi();
+
+	/** Tracks and lyrics fetched so far, searched before the network. */
+	static final TrackIndex TRACK_INDEX = CONFIG.responseCacheEnabled()
+			? TrackIndex.open(new File("cache/index/tracks.log"))
+			: TrackIndex.disabled();
+
+	/** Queries searched so far, and the prefetcher guessing from them what is being typed. */
+	static final QueryHistory QUERY_HISTORY = new QueryHistory(new File("cache/queries.txt"));
+
+	/** The result list of the last session, shown again at startup. */
+	static final SessionSnapshot SESSION = new SessionSnapshot(new File("cache/session.bin"));
+	private static final SearchPrefetcher SEARCH_PREFETCHER = new SearchPrefetcher(QUERY_HISTORY);
+
+	/** Lyrics for the popups, stored compressed under cache/lyrics and prefetched for visible tracks. */
+	static final LyricsService LYRICS = new LyricsService(MUSIX_MATCH_API, new LyricsStore(new File("cache/lyrics")));
+	private final FxUpdateBatcher fxUpdates = new FxUpdateBatcher(); // coalesces row updates per pulse
+	private final PauseTransition typingPause = new PauseTransition(
+			javafx.util.Duration.millis(CONFIG.searchDebounce().toMillis())); // restarted by every keystroke
+	private String lastQuery = ""; // normalized query of the latest search
+	private SessionSnapshot.Session restored; // the last session, as shown at startup
+	private boolean painted; // the first frame is up
+	private final Runnable firstPaint = this::onFirstPaint;
+	private SearchPager pager; // of the search on screen, null for a lyrics search
+	private boolean pageLoading; // a page of the search is being fetched
+	private int lastShownIndex; // latest row a cell started showing
+
+	static {
+		Providers.register(new ITunesApi());
+		Providers.register(MUSIX_MATCH_API);
+		Providers.register(OPEN_LIBRARY_API);
+		Metrics.gauge("cache.response.memoryHits", RESPONSE_CACHE::memoryHits);
+		Metrics.gauge("cache.response.diskHits", RESPONSE_CACHE::diskHits);
+		Metrics.gauge("cache.response.misses", RESPONSE_CACHE::misses);
+		Metrics.gauge("cache.response.hitRatio", () -> {
+			long hits = RESPONSE_CACHE.memoryHits() + RESPONSE_CACHE.diskHits();
+			long lookups = hits + RESPONSE_CACHE.misses();
+			return lookups == 0 ? 0.0 : (double) hits / lookups;
+		});
+	}
 
 	/**
 	 * Constructs a {@code GalleryApp} object}.
@@ -103,8 +176,8 @@ public class ApiApp extends Application {
 		this.queryTermField = new TextField(DEFAULT_STRING);
 		this.getImages = new Button("Get Tracks");
 		this.messageBar = new TextFlow();
-		this.itemScreen = new VBox(5);
-		this.mainContent = new ScrollPane(itemScreen);
+		this.trackList = new ListView<TrackRow>(rankedRows);
+		this.rankBox = new ComboBox<RankMode>(FXCollections.observableArrayList(RankMode.values()));
 		this.footer = new HBox(5);
 		this.progressBar = new ProgressBar();
 		this.copyright = new HBox(5);
@@ -115,22 +188,46 @@ public class ApiApp extends Application {
 	/** {@inheritDoc} */
 	@Override
 	public void init() {
-		System.out.println("init() called");
+		LOG.debug("init() called");
+		Metrics.registerMBean();
+		Metrics.startSnapshots(METRICS_FILE, CONFIG.metricsInterval());
+		CONFIG.startWatching(Duration.ofSeconds(2)); // picks up a new api key without a restart
+		if (CONFIG.httpWarmUp() && MOCK_SERVER == null) { // connects while the window is built
+			HTTP_CLIENT.warmUp(List.of(CONFIG.itunesUrl(), CONFIG.musixMatchUrl(), CONFIG.openLibraryUrl()));
+		}
 		HBox.setHgrow(this.queryTermField, Priority.ALWAYS);
 		this.searchLabel.setStyle("-fx-font-size: 15px;");
 		this.progressBar.setProgress(0);
 		this.progressBar.setMinWidth(620);
 		this.progressBar.setMinHeight(15);
+		this.rankBox.setValue(RankMode.RELEVANCE);
+		this.rankBox.valueProperty().addListener((observable, oldMode, mode) -> this.rankedRows
+				.setComparator(mode.comparator())); // same rows and cells, new order
+		this.restored = CONFIG.restoreSession() ? SESSION.load() : null;
 		this.searchBar.getChildren().addAll( this.searchLabel, this.queryTermField,
-				 this.getImages);
-		this.messageBar.getChildren()
-				.add(new Text("Type in a term, then click the Get Tracks button."));
+				 this.getImages, this.rankBox);
+		if (this.restored == null) {
+			this.messageBar.getChildren()
+					.add(new Text("Type in a term, tracks show as you type. Get Tracks searches right away."));
+		} else { // before the typing listener, so it is not searched as typed
+			this.queryTermField.setText(this.restored.query);
+			this.rankBox.setValue(this.restored.mode);
+			this.trackRows.setAll(this.restored.rows);
+			this.messageBar.getChildren().add(new Text("Tracks of your last search, refreshing..."));
+		}
 		this.copyright.getChildren().addAll(this.copyrightTextiTunes,this.copyrightTextMusixMatch);
 		this.footer.getChildren().addAll(this.progressBar);
-		this.root.getChildren().addAll(this.searchBar, this.messageBar, this.mainContent, this.footer,this.copyright);
+		this.trackList.setCellFactory(list -> new TrackCell(row -> this.showLyrics(row), this::onRowShown));
+		this.trackList.setFixedCellSize(160); // constant row height keeps virtualized layout cheap
+		this.trackList.setPrefHeight(460);
+		VBox.setVgrow(this.trackList, Priority.ALWAYS);
+		this.root.getChildren().addAll(this.searchBar, this.messageBar, this.trackList, this.footer,this.copyright);
 		// actions
-		this.getImages.setOnAction(
-				event -> this.loadContent(this.queryTermField.getText(), "music"));
+		this.getImages.setOnAction(event -> this.search(this.queryTermField.getText(), false));
+		this.queryTermField.setOnAction(event -> this.search(this.queryTermField.getText(), false));
+		// search as you type, once typing pauses
+		this.typingPause.setOnFinished(event -> this.search(this.queryTermField.getText(), true));
+		this.queryTermField.textProperty().addListener((observable, oldText, text) -> this.typingPause.playFromStart());
 
 	} // init
 
@@ -144,6 +241,7 @@ public class ApiApp extends Application {
 		Image icon = new Image("file:resources/icon.png");
 		this.stage.getIcons().add(icon);// added icon to the application
 		this.stage.setScene(this.scene);
+		this.scene.addPostLayoutPulseListener(this.firstPaint);
 		this.stage.sizeToScene();
 		this.stage.show();
 		Platform.runLater(() -> this.stage.setResizable(false));
@@ -154,9 +252,51 @@ public class ApiApp extends Application {
 	/** {@inheritDoc} */
 	@Override
 	public void stop() {
-		System.out.println("stop() called");
+		LOG.debug("stop() called");
+		LOG.info(RESPONSE_CACHE.stats());
+		LOG.info(HTTP_CLIENT.stats());
+		String query = lastQuery.isEmpty() && restored != null ? restored.query : lastQuery;
+		if (!query.isEmpty() && !trackRows.isEmpty() && MOCK_SERVER == null) { // recordings are not a session
+			SESSION.save(query, rankBox.getValue(), trackRows);
+		}
+		SEARCH_EXECUTOR.shutdown();
+		SEARCH_PREFETCHER.shutdown();
+		LYRICS.shutdown();
+		QUERY_HISTORY.save();
+		RESPONSE_CACHE.close();
+		SHARED_CACHE.close();
+		TRACK_INDEX.close();
+		CONFIG.stopWatching();
+		Metrics.stopSnapshots(METRICS_FILE);
+		Log.flush();
 	} // stop
 
+	/**
+	 * Starts a search for {@code text}, asked for with the Get Tracks button or
+	 * Enter, or {@code typed} after a pause in typing. A typed query is skipped
+	 * when it is too short or unchanged since the last search. Either way the
+	 * likely completions of the query are prefetched.
+	 * 
+	 * @param text
+	 * @param typed
+	 */
+	private void search(String text, boolean typed) {
+		String query = text.trim();
+		String normalized = query.replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+		if (typed) {
+			boolean openQuote = query.startsWith("\"") && lyricsPhrase(query) == null;
+			if (query.length() < MIN_TYPED || openQuote || normalized.equals(lastQuery)) {
+				return;
+			}
+		} else {
+			this.typingPause.stop();
+			QUERY_HISTORY.record(query);
+		}
+		lastQuery = normalized;
+		this.loadContent(query, "music", typed);
+		SEARCH_PREFETCHER.prefetchCompletions(query, "music");
+	}
+
 	/**
 	 * This method is called when get Tracks button is clicked. It takes the
 	 * searched text  as input and then download the data from
@@ -164,134 +304,156 @@ public class ApiApp extends Application {
 	 * 
 	 * For each tracks it gets the rating and lyrics from musixmatch API.
 	 * 
+	 * Tracks fetched before are looked up in {@link #TRACK_INDEX} first: with
+	 * enough local matches they show at once and iTunes is asked quietly for
+	 * anything new. A query in double quotes searches stored lyrics only, and
+	 * {@code top:N} lists the N best rated tracks fetched so far.
+	 * 
+	 * A {@code typed} search is quieter and cheaper: problems show in the
+	 * message bar instead of an alert, local matches are not refreshed from
+	 * iTunes, musixmatch and Open Library are not searched alongside, ratings
+	 * are looked up only once the rows stayed on screen for
+	 * {@code search.typedEnrichDelay}, and the query is added to the history
+	 * only if its results were shown in full. A partial query typed past thus
+	 * costs one iTunes request at most.
+	 * 
 	 * @param searchText
 	 * @param searchType
+	 * @param typed
 	 */
-	private void loadContent(String searchText, String searchType) {
+	private void loadContent(String searchText, String searchType, boolean typed) {
 		this.onClickGetImages(); // screen changes when getImages button clicked
-		ITunesApi ituneApi = new ITunesApi();
-		HttpResponse<String> iTunesResponse = ituneApi.getApiResponse(searchText, searchType); // get the response from iTunes API
-		System.out.println(iTunesResponse.request().toString());
-		results = ituneApi.getImageUriSet(iTunesResponse);// get the distinct image URIs from response
-		
-		Task<Void> task = new Task<Void>() { // Start the downloading task
-			HttpResponse<String> musixmatchTrackApiResponse=null;
-			HttpResponse<String> musixmatchLyricsApiResponse = null;
+		SEARCH_EXECUTOR.cancelCurrent(); // a new search replaces the one still running
+		String phrase = lyricsPhrase(searchText);
+		int top = topCount(searchText);
+		if (top > 0) {
+			rankBox.setValue(RankMode.RATING);
+		}
+		// lyrics and top searches have a single page, anything else pages through iTunes on scroll
+		SearchPager searchPager = phrase == null && top == 0
+				? new SearchPager(searchText, searchType, CONFIG.searchLimit())
+				: null;
+		this.pager = searchPager;
+		this.pageLoading = true; // until the first page is in
+
+		SearchTask task = new SearchTask() { // Start the downloading task
 			protected Void call() {
 				try {
-					if (results.size() < 5) {
-						showAlert("Error", "Error", "URL: " + iTunesResponse.request().toString() + "\n" + "Exception: "
-								+ results.size() + " distinct results found, but 5 or more are needed.");
-						System.out.println("Going to cancel the task");
+					// the iTunes fetch runs here too, the FX thread does no network I/O
+					ITunesApi ituneApi = new ITunesApi();
+					List<TrackRow> rows = new ArrayList<TrackRow>(); // rows of this search only
+					List<TrackIndex.Hit> hits = top > 0 ? TRACK_INDEX.topRated(top)
+							: phrase != null ? TRACK_INDEX.searchLyrics(phrase, IMAGE_COUNT)
+							: TRACK_INDEX.search(searchText, IMAGE_COUNT);
+					if (searchPager == null || hits.size() >= MIN_RESULTS) {
+						loadLocal(ituneApi, rows, hits);
+						return null;
+					}
+					// musixmatch and Open Library are searched alongside, each within its budget
+					CrossSourceSearch sources = typed ? null
+							: CrossSourceSearch.start(searchText, CONFIG.searchLimit(), ituneApi.name());
+					// results stream in while the body downloads, rows show once there are enough of them
+					ITunesApi.Page page = searchPager.next(ituneApi, result -> {
+						if (isCancelled()) {
+							return;
+						}
+						TrackRow row = new TrackRow(result);
+						rows.add(row);
+						if (rows.size() == MIN_RESULTS) {
+							List<TrackRow> first = new ArrayList<TrackRow>(rows);
+							fxUpdates.post(() -> showFirstRows(this, first));
+						} else if (rows.size() > MIN_RESULTS) {
+							appendRow(row);
+						}
+					}, !typed);
+					if (page == null) {
+						cancel(); // the error was already reported by search
+						return null;
+					}
+					if (isCancelled()) {
+						return null;
+					}
+					if (page.results.size() < MIN_RESULTS) {
+						reportProblem(typed, searchText, "Exception: " + page.results.size()
+								+ " distinct results found, but 5 or more are needed.");
+						LOG.debug("Too few results, cancelling the search");
 						cancel(); // cancel the downloading task if less than 5 distinct URIs available
 					} else {
-						images.clear(); // clear the existing images from list
-						Iterator<ItunesResult> iterator = results.iterator();
-						int ct = 1;
-						MusixMatchApi mma = new MusixMatchApi();
-						while (iterator.hasNext()) {
-							System.out.println("\n\n\n");
-							ItunesResult iTune = iterator.next();
-							String imageUrl = iTune.artworkUrl100;
-							String track_name = iTune.trackName;
-							String artist = iTune.artistName;
-							String date = formatDate(iTune.releaseDate);							
-							HBox content = new HBox(5);
-							VBox detailBox = new VBox(5);
-							VBox lyricsBox = new VBox(5);
-							HBox.setHgrow(content, Priority.ALWAYS);
-							Text trackName = new Text("Track :" + track_name);
-							Text artistName = new Text("Artist :" + artist);
-							Text releaseDate = new Text("Released : " + date);
-							detailBox.setAlignment(Pos.CENTER_LEFT);
-							lyricsBox.setAlignment(Pos.CENTER_RIGHT);
-							trackName.setFont(Font.font("Helvetica", FontWeight.BOLD, 20));
-							artistName.setFont(Font.font("Helvetica", FontWeight.MEDIUM, 20));
-							releaseDate.setFont(Font.font("Helvetica", FontWeight.MEDIUM, 20));
-							musixmatchTrackApiResponse = mma.getTrackApiResponse(track_name,artist);
-							Track track = mma.getRating(musixmatchTrackApiResponse);
-							Text ratingText = new Text("Rating  :N/A");;
-							//Text lyricsText =  new Text("Not Available");
-							
-							if(track!=null)
-							{
-								 ratingText = new Text("Rating  :"+track.track_rating+"/100");
-							}
-							ratingText.setFont(Font.font("Helvetica", FontWeight.MEDIUM, 20));
-							detailBox.setMaxWidth(400);
-							trackName.setWrappingWidth(330); // Maximum width of 150 pixels
-							artistName.setWrappingWidth(330);
-							releaseDate.setWrappingWidth(330);
-							
-							// Create a button on the main window
-					        Button openPopupButton = new Button("See Lyrics");
-					        
-					        if(track==null) {
-					        	openPopupButton.setDisable(true);
-					        }
-					        // Event handler for the button click
-					        openPopupButton.setOnAction(event -> {
-					            // Create a new stage for the popup
-					        	String lyrics1 = "Not Available";
-					        	try {
-					        	musixmatchLyricsApiResponse = mma.getLyricsApiResponse(track.track_name,track.artist_name);
-								lyrics1 = mma.getLyrics(musixmatchLyricsApiResponse);					           
-					        	}
-					        	catch(Exception e) {
-					        		lyrics1 = "Not Available";
-					        	}
-					        	Stage popupStage = new Stage();
-					            // Set the modality to make this a separate, independent window
-					            popupStage.initModality(Modality.APPLICATION_MODAL);
-					            popupStage.setTitle(track_name);
-					            Label paragraph = new Label(lyrics1);
-
-					            VBox vbox = new VBox(10); // 10px spacing between elements					            
-					            ScrollPane scrollLyrics = new ScrollPane(paragraph);
-					            vbox.getChildren().add(scrollLyrics);
-					            
-					            Scene popupScene = new Scene(vbox, 520, 460); 
-					            popupStage.setScene(popupScene);
-
-					            // Show the popup window
-					            popupStage.show();
-					        });
-
-							ImageView img = new ImageView(new Image(imageUrl));
-							 img.setFitWidth(128);
-							 img.setFitHeight(150);
-							 detailBox.getChildren().addAll(trackName, artistName, releaseDate);
-							 lyricsBox.getChildren().addAll(ratingText,openPopupButton);
-							content.getChildren().addAll(img, detailBox,lyricsBox);
-							images.add(content);
-							updateProgress(ct, results.size());
-							ct++;
-						}
-						Platform.runLater(() -> {
-							System.out.println("Called runLater to add images in screen");
-							itemScreen.getChildren().clear();
-							for (int j = 0; j < Math.min(IMAGE_COUNT, images.size()); j++) {
-								System.out.println("Adding images - " + j);
-								itemScreen.getChildren().add(images.get(j));
-							}
-							getImages.setDisable(false);
-							messageBar.getChildren().clear();
-							messageBar.getChildren().add(new Text("Here is the list of tracks..."));
-							
-						});
+						awaitSettled();
+						enrich(rows, sources);
 					}
-					System.out.println("at the end of try");
+				} catch (InterruptedException e) {
+					LOG.debug("Search cancelled");
 				} catch (Exception e) {
 					showAlert("Error", "Error", e.toString());
 				}
 				return null;
 			}
+
+			/**
+			 * Shows the rows found in the index, then, unless this is a lyrics
+			 * search, appends what a quiet iTunes search adds to them.
+			 */
+			private void loadLocal(ITunesApi ituneApi, List<TrackRow> rows, List<TrackIndex.Hit> hits)
+					throws InterruptedException {
+				LOG.debug("%s local matches for %s", hits.size(), searchText);
+				if (hits.isEmpty()) {
+					reportProblem(typed, searchText, top > 0 ? "No rated tracks fetched so far."
+							: "No lyrics fetched so far contain this phrase.");
+					cancel();
+					return;
+				}
+				for (TrackIndex.Hit hit : hits) {
+					TrackRow row = new TrackRow(hit.result);
+					if (hit.track != null) {
+						row.resolve(hit.track); // not on screen yet
+					}
+					rows.add(row);
+					if (searchPager != null) {
+						searchPager.markShown(hit.result.trackName); // distinct by trackName, like the iTunes results
+					}
+				}
+				List<TrackRow> first = new ArrayList<TrackRow>(rows);
+				fxUpdates.post(() -> showFirstRows(this, first));
+				CrossSourceSearch sources = null;
+				if (searchPager != null && !typed) { // while typing the local matches are enough
+					sources = CrossSourceSearch.start(searchText, CONFIG.searchLimit(), ituneApi.name());
+					searchPager.next(ituneApi, result -> {
+						if (!isCancelled()) {
+							TrackRow row = new TrackRow(result);
+							rows.add(row);
+							appendRow(row);
+						}
+					}, false);
+				}
+				if (!isCancelled()) {
+					awaitSettled();
+					enrich(rows, sources);
+				}
+			}
+
+			/**
+			 * Waits out {@code search.typedEnrichDelay} for a typed query, so the
+			 * ratings of a query typed past are never looked up; the next
+			 * keystroke pause or Enter cancels this task and the wait with it.
+			 */
+			private void awaitSettled() throws InterruptedException {
+				if (typed) {
+					Thread.sleep(CONFIG.typedEnrichDelay().toMillis());
+				}
+			}
 		};
 
 		progressBar.progressProperty().bind(task.progressProperty());
-		Thread thread = new Thread(task);
-		thread.setDaemon(true);
-		thread.start();
+		SEARCH_EXECUTOR.submit(task);
+		if (typed) {
+			task.setOnSucceeded(event -> QUERY_HISTORY.record(searchText)); // not replaced by further typing
+		}
+		task.runningProperty().addListener((observable, wasRunning, running) -> {
+			if (!running) {
+				pageDone(searchPager);
+			}
+		});
 
 		// Unbind progress bar and set its value to 1.0 when task is cancelled
 		task.setOnCancelled(event -> {
@@ -301,19 +463,280 @@ public class ApiApp extends Application {
 
 	}
 
+	/**
+	 * Called with the index of every row a cell starts showing. Once the rows
+	 * shown come within {@code PREFETCH_ROWS} of the end of the list, the next
+	 * page of the search is fetched, so it is usually in before the user gets
+	 * there.
+	 * 
+	 * @param index
+	 */
+	private void onRowShown(int index) {
+		lastShownIndex = index;
+		SearchPager current = this.pager;
+		if (current != null && !pageLoading && !current.isExhausted()
+				&& index >= trackList.getItems().size() - PREFETCH_ROWS) {
+			loadNextPage(current);
+		}
+	}
+
+	/**
+	 * Fetches the next page of a search and appends its new rows.
+	 * 
+	 * @param searchPager
+	 */
+	private void loadNextPage(SearchPager searchPager) {
+		pageLoading = true;
+		LOG.debug("Loading results from %s", searchPager.getNextOffset());
+		SearchTask task = new SearchTask() {
+			protected Void call() {
+				try {
+					List<TrackRow> rows = new ArrayList<TrackRow>();
+					ITunesApi.Page page = searchPager.next(new ITunesApi(), result -> {
+						if (!isCancelled()) {
+							TrackRow row = new TrackRow(result);
+							rows.add(row);
+							appendRow(row);
+						}
+					}, false);
+					if (page != null && !isCancelled()) {
+						enrich(rows, null);
+					}
+				} catch (InterruptedException e) {
+					LOG.debug("Page cancelled");
+				}
+				return null;
+			}
+		};
+		progressBar.progressProperty().bind(task.progressProperty());
+		task.runningProperty().addListener((observable, wasRunning, running) -> {
+			if (!running) {
+				pageDone(searchPager);
+			}
+		});
+		SEARCH_EXECUTOR.submitFollowUp(task);
+	}
+
+	/**
+	 * Allows the next page once a page has landed, and fetches it right away if
+	 * the rows shown are still near the end, e.g. when a page held only repeats.
+	 * 
+	 * @param searchPager
+	 */
+	private void pageDone(SearchPager searchPager) {
+		fxUpdates.post(() -> { // after the rows the page posted
+			if (this.pager == searchPager) {
+				pageLoading = false;
+				onRowShown(lastShownIndex);
+			}
+		});
+	}
+
+	/**
+	 * A search or one of its pages, run on {@link #SEARCH_EXECUTOR}. Rows are
+	 * added and resolved through {@link #fxUpdates}, and left alone once the task
+	 * is cancelled.
+	 */
+	private abstract class SearchTask extends Task<Void> {
+
+		void appendRow(TrackRow row) {
+			fxUpdates.post(() -> {
+				if (!isCancelled()) {
+					trackRows.add(row);
+				}
+			});
+		}
+
+		/**
+		 * Looks up the ratings of the rows not resolved yet; they fill in as they
+		 * land. With {@code sources}, rows first take the musixmatch tracks and
+		 * books the cross-source search joined to them, and only the rows it found
+		 * no track for are looked up one by one.
+		 */
+		void enrich(List<TrackRow> rows, CrossSourceSearch sources) throws InterruptedException {
+			if (sources != null) {
+				sources.await(); // no longer than the slowest budget
+				List<String> late = sources.late();
+				if (!late.isEmpty()) {
+					LOG.debug("Going on without %s, over budget", late);
+				}
+			}
+			List<TrackRow> pending = new ArrayList<TrackRow>();
+			List<ItunesResult> results = new ArrayList<ItunesResult>();
+			for (TrackRow row : rows) {
+				ItunesResult result = row.getResult();
+				if (sources != null) {
+					List<OpenLibraryDoc> books = sources.matches(OPEN_LIBRARY_API, result.trackName, result.artistName);
+					List<OpenLibraryDoc> named = books.isEmpty()
+							? sources.titleMatches(OPEN_LIBRARY_API, result.trackName)
+							: books;
+					if (!named.isEmpty()) {
+						fxUpdates.post(() -> row.setBooks(named));
+					}
+				}
+				if (row.isResolved()) {
+					continue;
+				}
+				List<Track> joined = sources == null ? new ArrayList<Track>()
+						: sources.matches(MUSIX_MATCH_API, result.trackName, result.artistName);
+				if (!joined.isEmpty()) {
+					Track found = joined.get(0); // best rated, musixmatch sorts by rating
+					TRACK_INDEX.addTrack(result.trackName, result.artistName, found);
+					fxUpdates.post(() -> {
+						if (!isCancelled()) {
+							row.resolve(found);
+						}
+					});
+					continue;
+				}
+				pending.add(row);
+				results.add(result);
+			}
+			if (results.isEmpty()) {
+				updateProgress(1, 1);
+				return;
+			}
+			new TrackEnricher(MUSIX_MATCH_API).enrich(results, (index, track) -> fxUpdates.post(() -> {
+				if (!isCancelled()) {
+					pending.get(index).resolve(track);
+				}
+			}), (done, total) -> updateProgress(done, total));
+		}
+	}
+
+	/**
+	 * Reports a search that found too little, with an alert if it was asked for
+	 * and in the message bar if it was typed.
+	 * 
+	 * @param typed
+	 * @param searchText
+	 * @param problem
+	 */
+	private void reportProblem(boolean typed, String searchText, String problem) {
+		if (!typed) {
+			showAlert("Error", "Error", "Search: " + searchText + "\n" + problem);
+			return;
+		}
+		fxUpdates.post(() -> {
+			getImages.setDisable(false);
+			messageBar.getChildren().setAll(new Text(problem));
+		});
+	}
+
+	/**
+	 * Returns N of a {@code top:N} query, at most {@code MAX_TOP}, or 0 for any
+	 * other query.
+	 * 
+	 * @param searchText
+	 * @return int
+	 */
+	private static int topCount(String searchText) {
+		String text = searchText.trim().toLowerCase(Locale.ROOT);
+		if (!text.matches("top:\\s*\\d{1,9}")) {
+			return 0;
+		}
+		return Math.min(MAX_TOP, Integer.parseInt(text.substring(4).trim()));
+	}
+
+	/**
+	 * Returns the phrase of a query written in double quotes, or {@code null}.
+	 * 
+	 * @param searchText
+	 * @return String
+	 */
+	private static String lyricsPhrase(String searchText) {
+		String text = searchText.trim();
+		if (text.length() > 2 && text.startsWith("\"") && text.endsWith("\"")) {
+			return text.substring(1, text.length() - 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the list with the first rows of a search, as soon as there are
+	 * enough of them to be worth showing.
+	 * 
+	 * @param search the task the rows belong to
+	 * @param rows
+	 */
+	private void showFirstRows(Task<?> search, List<TrackRow> rows) {
+		if (search.isCancelled()) {
+			return; // a newer search owns the screen now
+		}
+		LOG.debug("Adding %s tracks to the screen", rows.size());
+		trackRows.setAll(rows);
+		trackList.scrollTo(0);
+		getImages.setDisable(false);
+		messageBar.getChildren().clear();
+		messageBar.getChildren().add(new Text("Here is the list of tracks..."));
+	}
+
+	/**
+	 * Opens a popup with the lyrics of a track.
+	 * 
+	 * @param row
+	 */
+	private void showLyrics(TrackRow row) {
+		Track track = row.getTrack();
+		String title = row.getResult().trackName;
+		// even stored lyrics are read off this thread, a placeholder fills in when they land
+		Label paragraph = new Label("Loading lyrics...");
+		LYRICS.load(track).whenComplete((lyrics, error) -> Platform.runLater(
+				() -> paragraph.setText(error == null ? lyrics : "Not Available")));
+		Stage popupStage = new Stage();
+		// Set the modality to make this a separate, independent window
+		popupStage.initModality(Modality.APPLICATION_MODAL);
+		popupStage.setTitle(title);
+
+		VBox vbox = new VBox(10); // 10px spacing between elements
+		ScrollPane scrollLyrics = new ScrollPane(paragraph);
+		vbox.getChildren().add(scrollLyrics);
+
+		Scene popupScene = new Scene(vbox, 520, 460);
+		popupStage.setScene(popupScene);
+
+		// Show the popup window
+		popupStage.show();
+	}
+
+	/**
+	 * Runs once, after the layout of the first frame. The network is left alone
+	 * until then, so a restored session shows without waiting on it; only now is
+	 * its query searched again, quietly, to refresh it and page in the rest.
+	 */
+	private void onFirstPaint() {
+		if (painted) {
+			return;
+		}
+		painted = true;
+		Platform.runLater(() -> this.scene.removePostLayoutPulseListener(this.firstPaint)); // not while pulsing
+		ProcessHandle.current().info().startInstant().ifPresent(launched -> {
+			long millis = Duration.between(launched, Instant.now()).toMillis();
+			Metrics.gauge("startup.firstPaintMillis", () -> millis);
+			LOG.info("First paint %s ms after launch, %s rows restored", millis,
+					restored == null ? 0 : restored.rows.size());
+		});
+		if (restored != null) {
+			String query = restored.query;
+			Platform.runLater(() -> this.search(query, true));
+		}
+		Duration exitAfter = CONFIG.exitAfter();
+		if (!exitAfter.isZero()) {
+			PauseTransition exit = new PauseTransition(javafx.util.Duration.millis(exitAfter.toMillis()));
+			exit.setOnFinished(event -> Platform.exit());
+			exit.play();
+		}
+	}
+
 	/**
 	 * This method is reponsible to generate the initial screen when application is
-	 * loaded using default.png provided
+	 * loaded using default.png provided, shown whenever the list is empty.
 	 */
 	private void defaultContent() {
-		// mainContent.getChildren().clear();
-		itemScreen.getChildren().clear();
-		//for (int i = 0; i < IMAGE_COUNT; i++) {
-			ImageView imageView = new ImageView(new Image("file:resources/readme-banner.png"));
-			imageView.setFitWidth(640); // Set image width
-			imageView.setFitHeight(460); // Set image height
-			this.itemScreen.getChildren().add(imageView);
-		//}
+		ImageView imageView = new ImageView(new Image("file:resources/readme-banner.png", true)); // off the FX thread
+		imageView.setFitWidth(640); // Set image width
+		imageView.setFitHeight(460); // Set image height
+		this.trackList.setPlaceholder(imageView); // shown while the list is empty
 	}
 
 	/**
@@ -340,29 +763,20 @@ public class ApiApp extends Application {
 	 * @param contentText
 	 */
 	static void showAlert(String title, String headerText, String contentText) {
-		Platform.runLater(() -> {
-			getImages.setDisable(false);
-			Alert alert = new Alert(Alert.AlertType.ERROR);
-			alert.setTitle(title);
-			alert.setHeaderText(headerText);
-			alert.setContentText(contentText);
-			alert.showAndWait();
-		});
+		try {
+			Platform.runLater(() -> {
+				getImages.setDisable(false);
+				Alert alert = new Alert(Alert.AlertType.ERROR);
+				alert.setTitle(title);
+				alert.setHeaderText(headerText);
+				alert.setContentText(contentText);
+				alert.showAndWait();
+			});
+		} catch (IllegalStateException headless) {
+			// no JavaFX toolkit, e.g. the API classes are used by BatchEnricher
+			LOG.error("%s: %s", title, contentText);
+		}
 	}
 	
-	private String formatDate(String date) {
-		//Parse the ISO 8601 date into a ZonedDateTime (with time zone)
-		ZonedDateTime zonedDateTime = ZonedDateTime.parse(date);
-
-		// Convert to LocalDate to remove time and timezone information
-		LocalDate localDate = zonedDateTime.toLocalDate();
-
-		// Create a formatter to convert into "dd mon yyyy"
-		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd MMM yyyy", Locale.ENGLISH);
-
-		// Format the LocalDate using the custom pattern
-		String formattedDate = localDate.format(formatter);
-		return formattedDate;
-		}
 } // ApiApp
 
@@ -0,0 +1,368 @@
+package cs1302.api;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Shivam Mishra
+ * Settings of the app, read once from {@code resources/config.properties}
+ * instead of on every request. A setting {@code name} is looked up as the
+ * system property {@code cs1302.api.<name>} first, then in the file, then
+ * falls back to its default, so any of them can be overridden on the command
+ * line. The file is checked for changes every few seconds once
+ * {@link #startWatching} is called, and listeners are told after a reload so
+ * they can rebuild what depends on it, such as request templates holding the
+ * api key. Endpoints, the search limit and the rate are read when the classes
+ * using them load; the key and the enrichment limits apply without a restart.
+ *
+ * <pre>
+ * musixapi.key=...
+ * itunes.url=https://itunes.apple.com/search
+ * musixmatch.rate=8
+ * enrich.requestTimeout=10s
+ * http.connectTimeout=3s
+ * budget.openlibrary=1500ms
+ * offline=true
+ * shared.cache=cachebox:7317
+ * mock.latency=40ms
+ * </pre>
+ */
+public class AppConfig {
+
+	private static final String SYSTEM_PREFIX = "cs1302.api.";
+	private static final Log LOG = Log.get(AppConfig.class);
+
+	private final File file;
+	private volatile Properties values = new Properties();
+	private volatile long loadedModified;
+	private volatile long loadedLength;
+	private final Map<String, String> overrides = new ConcurrentHashMap<String, String>();
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+	private ScheduledExecutorService watcher;
+
+	/**
+	 * Constructs an {@code AppConfig} and loads {@code file}. A missing file is
+	 * reported and treated as empty.
+	 *
+	 * @param file
+	 */
+	public AppConfig(File file) {
+		this.file = file;
+		reload();
+	}
+
+	/** The musixmatch api key. */
+	public String musixMatchKey() {
+		return getString("musixapi.key", "");
+	}
+
+	/** The iTunes search endpoint. */
+	public String itunesUrl() {
+		return getString("itunes.url", "https://itunes.apple.com/search");
+	}
+
+	/** The Open Library search endpoint. */
+	public String openLibraryUrl() {
+		return getString("openlibrary.url", "https://openlibrary.org/search.json");
+	}
+
+	/** Base URL of the musixmatch api, ending in a slash. */
+	public String musixMatchUrl() {
+		return getString("musixmatch.url", "https://api.musixmatch.com/ws/1.1/");
+	}
+
+	/** Number of results asked of iTunes per search. */
+	public int searchLimit() {
+		return getInt("itunes.limit", 50);
+	}
+
+	/** Pause in typing after which the query typed so far is searched. */
+	public Duration searchDebounce() {
+		return getDuration("search.debounce", Duration.ofMillis(300));
+	}
+
+	/**
+	 * How long the rows of a typed query stay on screen before their ratings
+	 * are looked up; typing on cancels the wait, Enter skips it.
+	 */
+	public Duration typedEnrichDelay() {
+		return getDuration("search.typedEnrichDelay", Duration.ofMillis(1500));
+	}
+
+	/** musixmatch track searches allowed per second. */
+	public int musixMatchRate() {
+		return getInt("musixmatch.rate", 8);
+	}
+
+	/** Track searches in flight at once while enriching a page. */
+	public int enrichConcurrency() {
+		return getInt("enrich.concurrency", 8);
+	}
+
+	/** Timeout of each track search while enriching. */
+	public Duration enrichRequestTimeout() {
+		return getDuration("enrich.requestTimeout", Duration.ofSeconds(10));
+	}
+
+	/** Timeout of the enrichment of a whole page. */
+	public Duration enrichBatchTimeout() {
+		return getDuration("enrich.batchTimeout", Duration.ofSeconds(30));
+	}
+
+	/**
+	 * How long a search waits for {@code source}, e.g. {@code openlibrary},
+	 * before going on without it.
+	 */
+	public Duration sourceBudget(String source) {
+		return getDuration("budget." + source, Duration.ofSeconds(2));
+	}
+
+	/**
+	 * Whether the APIs are answered by an in-process {@link MockApiServer}
+	 * instead of the network, for load tests and build boxes without access.
+	 */
+	public boolean offline() {
+		return getBoolean("offline", false);
+	}
+
+	/** Time allowed to open a connection. */
+	public Duration httpConnectTimeout() {
+		return getDuration("http.connectTimeout", Duration.ofSeconds(5));
+	}
+
+	/** Timeout of requests built without one, so a stalled socket cannot hang a caller. */
+	public Duration httpRequestTimeout() {
+		return getDuration("http.requestTimeout", Duration.ofSeconds(20));
+	}
+
+	/** Threads of the HTTP client, which run its response handlers. */
+	public int httpThreads() {
+		return getInt("http.threads", 2 * enrichConcurrency());
+	}
+
+	/** How long an idle connection is kept open for reuse. */
+	public Duration httpKeepAlive() {
+		return getDuration("http.keepAlive", Duration.ofMinutes(5));
+	}
+
+	/** Whether connections to the API hosts are opened at startup. */
+	public boolean httpWarmUp() {
+		return getBoolean("http.warmup", true);
+	}
+
+	/**
+	 * Address of the {@link SharedCacheServer} to consult before the APIs, as
+	 * {@code host:port}, {@code local} for one in this JVM, or {@code null}
+	 * for none.
+	 */
+	public String sharedCache() {
+		String value = getString("shared.cache", "");
+		return value.isEmpty() ? null : value;
+	}
+
+	/**
+	 * Address a {@link SharedCacheServer} listens on, loopback unless set, e.g.
+	 * to {@code 0.0.0.0} for a fleet.
+	 */
+	public String sharedBind() {
+		return getString("shared.bind", "127.0.0.1");
+	}
+
+	/**
+	 * Secret a client of the shared cache has to prove it knows before the
+	 * server takes its requests, the same on the server and every client;
+	 * empty for none, which only a loopback server accepts.
+	 */
+	public String sharedSecret() {
+		return getString("shared.secret", "");
+	}
+
+	/** How long a client of the shared cache may take to fetch a key it leased. */
+	public Duration sharedLease() {
+		return getDuration("shared.lease", Duration.ofSeconds(10));
+	}
+
+	/** Most bytes of values a shared cache server keeps. */
+	public long sharedMaxBytes() {
+		return (long) getInt("shared.maxMegabytes", 256) << 20;
+	}
+
+	/** Whether the result list of the last session is shown at startup. */
+	public boolean restoreSession() {
+		return getBoolean("startup.restore", true);
+	}
+
+	/**
+	 * How long after the first paint the app exits by itself, zero for never;
+	 * used by the training run that records the class data sharing archive.
+	 */
+	public Duration exitAfter() {
+		return getDuration("startup.exitAfter", Duration.ZERO);
+	}
+
+	/** Whether API responses are cached; off for benchmarks. */
+	public boolean responseCacheEnabled() {
+		return !getBoolean("nocache", false);
+	}
+
+	/** How often the metrics snapshot is written. */
+	public Duration metricsInterval() {
+		return getDuration("metrics.interval", Duration.ofSeconds(60));
+	}
+
+	/**
+	 * Returns a setting as a string.
+	 *
+	 * @param name         setting name, without the {@code cs1302.api.} prefix
+	 * @param defaultValue value when the setting is not set anywhere
+	 * @return String
+	 */
+	public String getString(String name, String defaultValue) {
+		String value = overrides.get(name);
+		if (value == null) {
+			value = System.getProperty(SYSTEM_PREFIX + name);
+		}
+		if (value == null) {
+			value = values.getProperty(name);
+		}
+		return value == null ? defaultValue : value.trim();
+	}
+
+	public int getInt(String name, int defaultValue) {
+		String value = getString(name, null);
+		try {
+			return value == null ? defaultValue : Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			LOG.warn("Setting %s is not a number: %s", name, value);
+			return defaultValue;
+		}
+	}
+
+	public boolean getBoolean(String name, boolean defaultValue) {
+		String value = getString(name, null);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+
+	/**
+	 * Returns a setting as a duration, written as a number of seconds, a number
+	 * with an {@code ms}, {@code s} or {@code m} suffix, or in ISO-8601 form.
+	 *
+	 * @param name
+	 * @param defaultValue
+	 * @return Duration
+	 */
+	public Duration getDuration(String name, Duration defaultValue) {
+		String value = getString(name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		String lower = value.toLowerCase(Locale.ROOT);
+		try {
+			if (lower.endsWith("ms")) {
+				return Duration.ofMillis(Long.parseLong(lower.substring(0, lower.length() - 2).trim()));
+			} else if (lower.endsWith("s") && !lower.startsWith("p")) {
+				return Duration.ofSeconds(Long.parseLong(lower.substring(0, lower.length() - 1).trim()));
+			} else if (lower.endsWith("m") && !lower.startsWith("p")) {
+				return Duration.ofMinutes(Long.parseLong(lower.substring(0, lower.length() - 1).trim()));
+			} else if (lower.startsWith("p")) {
+				return Duration.parse(value);
+			}
+			return Duration.ofSeconds(Long.parseLong(lower));
+		} catch (RuntimeException e) {
+			LOG.warn("Setting %s is not a duration: %s", name, value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Sets a setting for the rest of the run, ahead of system properties and the
+	 * file, e.g. an endpoint pointed at a local server. Like any setting, it
+	 * only reaches the classes that read it after it is set.
+	 *
+	 * @param name
+	 * @param value
+	 */
+	public void override(String name, String value) {
+		overrides.put(name, value);
+	}
+
+	/**
+	 * Registers a listener called after every reload of the file.
+	 *
+	 * @param listener
+	 */
+	public void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Checks the file for changes every {@code interval} on a daemon thread.
+	 *
+	 * @param interval
+	 */
+	public synchronized void startWatching(Duration interval) {
+		if (watcher != null) {
+			return;
+		}
+		watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "config-watcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long millis = Math.max(100, interval.toMillis());
+		watcher.scheduleWithFixedDelay(this::reloadIfChanged, millis, millis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stopWatching() {
+		if (watcher != null) {
+			watcher.shutdownNow();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Reloads the file if its size or modification time changed since it was
+	 * last read.
+	 */
+	void reloadIfChanged() {
+		if (file.lastModified() != loadedModified || file.length() != loadedLength) {
+			reload();
+			LOG.info("Reloaded %s", file);
+			for (Runnable listener : listeners) {
+				try {
+					listener.run();
+				} catch (RuntimeException e) {
+					LOG.error("Config listener failed", e);
+				}
+			}
+		}
+	}
+
+	private synchronized void reload() {
+		loadedModified = file.lastModified();
+		loadedLength = file.length();
+		Properties loaded = new Properties();
+		try (FileInputStream in = new FileInputStream(file)) {
+			loaded.load(in);
+		} catch (IOException ioe) {
+			LOG.error("Could not read %s, using defaults: %s", file, ioe.toString());
+			return; // keep what was loaded before
+		}
+		values = loaded;
+		String level = getString("log", null);
+		if (level != null) {
+			Log.setLevel(Log.parseLevel(level));
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package cs1302.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.scene.image.Image;
+
+/**
+ * @author Shivam Mishra
+ * Loads track artwork in the background and keeps it around for the next time it
+ * is shown. Images are decoded straight at the size they are displayed at,
+ * decoded images are kept in an LRU map bounded by their pixel memory, and the
+ * raw downloaded bytes are kept in a directory on disk. Concurrent requests for
+ * the same URL share one download.
+ */
+public class ArtworkCache {
+
+	private static final Log LOG = Log.get(ArtworkCache.class);
+	private static final Metrics.Endpoint METRICS = Metrics.endpoint("artwork");
+
+	private final int width;
+	private final int height;
+	private final File directory;
+	private final long maxMemoryBytes;
+	private final long maxDiskBytes;
+
+	private final LinkedHashMap<String, Image> memory = new LinkedHashMap<String, Image>(64, 0.75f, true);
+	private long memoryBytes = 0;
+	private final Map<String, CompletableFuture<Image>> inFlight =
+			new ConcurrentHashMap<String, CompletableFuture<Image>>();
+	private final ExecutorService io;
+	private final Object diskLock = new Object();
+	private long diskBytes = 0; // guarded by diskLock, recounted by each prune
+
+	/**
+	 * Constructs an {@code ArtworkCache}.
+	 *
+	 * @param directory      directory for the raw image bytes
+	 * @param width          width images are decoded at
+	 * @param height         height images are decoded at
+	 * @param maxMemoryBytes budget for decoded images, counted as 4 bytes a pixel
+	 * @param maxDiskBytes   budget for the raw bytes on disk
+	 */
+	public ArtworkCache(File directory, int width, int height, long maxMemoryBytes, long maxDiskBytes) {
+		this.directory = directory;
+		this.width = width;
+		this.height = height;
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.maxDiskBytes = maxDiskBytes;
+		this.io = Executors.newFixedThreadPool(2, runnable -> {
+			Thread thread = new Thread(runnable, "artwork-io");
+			thread.setDaemon(true);
+			return thread;
+		});
+		Metrics.gauge("artwork.inFlight", inFlight::size);
+		if (directory.isDirectory() || directory.mkdirs()) {
+			io.execute(this::pruneDisk);
+		}
+	}
+
+	/**
+	 * Returns the decoded image for a URL if it is already in memory, so that a
+	 * cell can show it without waiting for a pulse.
+	 *
+	 * @param url
+	 * @return Image, or {@code null} if not in memory
+	 */
+	public synchronized Image getIfCached(String url) {
+		return memory.get(url);
+	}
+
+	/**
+	 * Returns the image for a URL, loading it from disk or the network in the
+	 * background if it is not in memory. The future completes exceptionally if
+	 * the image could not be loaded.
+	 *
+	 * @param url
+	 * @return CompletableFuture<Image>
+	 */
+	public CompletableFuture<Image> load(String url) {
+		Image cached = getIfCached(url);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		CompletableFuture<Image> created = new CompletableFuture<Image>();
+		CompletableFuture<Image> existing = inFlight.putIfAbsent(url, created);
+		if (existing != null) {
+			return existing; // someone is already loading it
+		}
+		created.whenComplete((image, error) -> inFlight.remove(url));
+		io.execute(() -> {
+			File file = fileFor(url);
+			if (file.isFile()) {
+				try {
+					created.complete(remember(url, decode(Files.readAllBytes(file.toPath()))));
+					return;
+				} catch (IOException | RuntimeException e) {
+					file.delete(); // damaged, fetch it again
+				}
+			}
+			download(url, file, created);
+		});
+		return created;
+	}
+
+	private void download(String url, File file, CompletableFuture<Image> result) {
+		HttpRequest request;
+		try {
+			request = HttpRequest.newBuilder().uri(URI.create(url)).build();
+		} catch (IllegalArgumentException | NullPointerException e) {
+			result.completeExceptionally(e);
+			return;
+		}
+		long start = System.nanoTime();
+		ApiApp.HTTP_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+				.whenComplete((response, error) -> METRICS.record(start, response, error))
+				.thenAcceptAsync(response -> {
+					if (response.statusCode() != 200) {
+						result.completeExceptionally(new IOException("artwork status " + response.statusCode()));
+						return;
+					}
+					byte[] bytes = response.body();
+					try {
+						result.complete(remember(url, decode(bytes)));
+						store(file, bytes);
+					} catch (RuntimeException e) {
+						result.completeExceptionally(e);
+					}
+				}, io).exceptionally(error -> {
+					result.completeExceptionally(error);
+					return null;
+				});
+	}
+
+	/**
+	 * Decodes image bytes at the display size, so the full size bitmap is never
+	 * kept.
+	 */
+	private Image decode(byte[] bytes) {
+		Image image = new Image(new ByteArrayInputStream(bytes), width, height, false, true);
+		if (image.isError()) {
+			throw new IllegalStateException("cannot decode artwork", image.getException());
+		}
+		return image;
+	}
+
+	private synchronized Image remember(String url, Image image) {
+		Image old = memory.put(url, image);
+		if (old != null) {
+			memoryBytes -= sizeOf(old);
+		}
+		memoryBytes += sizeOf(image);
+		Iterator<Image> eldest = memory.values().iterator();
+		while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+			memoryBytes -= sizeOf(eldest.next());
+			eldest.remove();
+		}
+		return image;
+	}
+
+	private static long sizeOf(Image image) {
+		return 4L * (long) image.getWidth() * (long) image.getHeight();
+	}
+
+	private void store(File file, byte[] bytes) {
+		try {
+			File tmp = new File(directory, file.getName() + ".tmp");
+			Files.write(tmp.toPath(), bytes);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ioe) {
+			LOG.warn("Could not store artwork: %s", ioe.toString());
+			return;
+		}
+		synchronized (diskLock) {
+			diskBytes += bytes.length;
+			if (diskBytes > maxDiskBytes) {
+				pruneDisk();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the least recently written files once the disk budget is passed,
+	 * down to a tenth under it so a long session does not prune on every
+	 * download. Runs at startup and whenever {@link #store} passes the budget.
+	 */
+	private void pruneDisk() {
+		synchronized (diskLock) {
+			File[] files = directory.listFiles();
+			if (files == null) {
+				return;
+			}
+			long total = 0;
+			for (File file : files) {
+				total += file.length();
+			}
+			long target = total > maxDiskBytes ? maxDiskBytes - maxDiskBytes / 10 : total;
+			Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+			for (int i = 0; i < files.length && total > target; i++) {
+				long length = files[i].length();
+				if (files[i].delete()) {
+					total -= length;
+				}
+			}
+			diskBytes = total;
+		}
+	}
+
+	private File fileFor(String url) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest.digest(url.getBytes(StandardCharsets.UTF_8))) {
+				name.append(String.format("%02x", b));
+			}
+			return new File(directory, name.toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JVM has SHA-1
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package cs1302.api;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cs1302.api.ITunesApi.ItunesResult;
+import cs1302.api.MusixMatchApi.Track;
+
+/**
+ * @author Shivam Mishra
+ * Headless driver that runs the iTunes to musixmatch enrichment of
+ * {@code ApiApp} over a file of search terms, one term per line, and writes one
+ * JSON object per enriched track to a JSON Lines file. Terms are searched in
+ * parallel, and every finished term is recorded in a checkpoint file next to
+ * the output, so an interrupted run picks up where it stopped when started
+ * again with the same arguments. Call metrics are written next to the output
+ * as {@code <output>.metrics.json} every 10 seconds.
+ *
+ * <p>
+ * To run it, use the following commands:
+ *
+ * <pre>
+ * $ mvn clean compile
+ * $ mvn exec:java -Dexec.mainClass=cs1302.api.BatchEnricher -Dexec.args="terms.txt tracks.jsonl 8"
+ * </pre>
+ */
+public class BatchEnricher {
+
+	/**
+	 * One line of the output: the {@code ItunesResult} fields plus the musixmatch
+	 * rating. Serialized with Gson.
+	 */
+	static class EnrichedRecord {
+		String term;
+		String wrapperType;
+		String kind;
+		String artworkUrl100;
+		String artistName;
+		String trackName;
+		String country;
+		String currency;
+		String releaseDate;
+		Integer track_rating; // null when musixmatch did not know the track
+		Integer commontrack_id;
+	}
+
+	private final File output;
+	private final File checkpoint;
+	private final int parallelism;
+	private final AtomicLong termsDone = new AtomicLong();
+	private final AtomicLong termsFailed = new AtomicLong();
+	private final AtomicLong records = new AtomicLong();
+	private final AtomicLong rated = new AtomicLong();
+	private static final Log LOG = Log.get(BatchEnricher.class);
+	private Writer out;
+	private Writer done;
+
+	/**
+	 * Constructs a {@code BatchEnricher}.
+	 *
+	 * @param output      JSON Lines output file, appended to
+	 * @param parallelism number of terms searched at once
+	 */
+	public BatchEnricher(File output, int parallelism) {
+		this.output = output;
+		this.checkpoint = new File(output.getPath() + ".checkpoint");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Main entry-point of the batch run.
+	 *
+	 * @param args terms file, output file and optional parallelism
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("usage: BatchEnricher <terms-file> <output.jsonl> [parallelism]");
+			System.exit(2);
+		}
+		int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		try {
+			new BatchEnricher(new File(args[1]), parallelism).run(new File(args[0]));
+		} catch (IOException | InterruptedException e) {
+			System.err.println(e);
+			e.printStackTrace();
+			System.exit(1);
+		} // try
+		System.exit(0);
+	} // main
+
+	/**
+	 * Enriches every term of {@code termsFile} not yet in the checkpoint.
+	 *
+	 * @param termsFile
+	 * @throws IOException          if the files cannot be read or written
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public void run(File termsFile) throws IOException, InterruptedException {
+		Set<String> finished = readLines(checkpoint);
+		Set<String> terms = readLines(termsFile);
+		List<String> pending = new ArrayList<String>();
+		for (String term : terms) {
+			if (!finished.contains(term)) {
+				pending.add(term);
+			}
+		}
+		System.out.printf("%d terms, %d already done, %d to go with parallelism %d%n", terms.size(),
+				terms.size() - pending.size(), pending.size(), parallelism);
+
+		out = new BufferedWriter(new FileWriter(output, StandardCharsets.UTF_8, true));
+		done = new BufferedWriter(new FileWriter(checkpoint, StandardCharsets.UTF_8, true));
+		long start = System.nanoTime();
+		File metricsFile = new File(output.getPath() + ".metrics.json");
+		Metrics.registerMBean();
+		Metrics.startSnapshots(metricsFile, Duration.ofSeconds(10));
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "batch-stats");
+			thread.setDaemon(true);
+			return thread;
+		});
+		reporter.scheduleAtFixedRate(() -> report(start, pending.size()), 10, 10, TimeUnit.SECONDS);
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+		try {
+			for (String term : pending) {
+				workers.execute(() -> enrich(term));
+			}
+			workers.shutdown();
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		} finally {
+			workers.shutdownNow();
+			reporter.shutdownNow();
+			out.close();
+			done.close();
+			ApiApp.RESPONSE_CACHE.close();
+			Metrics.stopSnapshots(metricsFile);
+		}
+		report(start, pending.size());
+	}
+
+	/**
+	 * Searches one term, looks up the ratings of its results and writes them,
+	 * then marks the term as done.
+	 */
+	private void enrich(String term) {
+		try {
+			ITunesApi ituneApi = new ITunesApi();
+			List<ItunesResult> results = ituneApi.search(term, "music", null);
+			if (results == null) {
+				termsFailed.incrementAndGet(); // left out of the checkpoint so a rerun tries again
+				return;
+			}
+			BitSet failed = new BitSet(results.size());
+			Track[] tracks = new TrackEnricher(new MusixMatchApi()).enrich(results, null, null, failed);
+			if (!failed.isEmpty()) {
+				// a null rating would read as unknown to musixmatch, so the whole term is tried again
+				termsFailed.incrementAndGet();
+				LOG.warn("Term \"%s\" left for a rerun, %s lookups failed", term, failed.cardinality());
+				return;
+			}
+			StringBuilder lines = new StringBuilder();
+			int found = 0;
+			for (int i = 0; i < results.size(); i++) {
+				lines.append(ApiApp.GSON.toJson(toRecord(term, results.get(i), tracks[i]))).append('\n');
+				if (tracks[i] != null) {
+					found++;
+				}
+			}
+			synchronized (this) {
+				out.write(lines.toString());
+				out.flush();
+				done.write(term + "\n"); // only after its records are on disk
+				done.flush();
+			}
+			records.addAndGet(results.size());
+			rated.addAndGet(found);
+			termsDone.incrementAndGet();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException | RuntimeException e) {
+			termsFailed.incrementAndGet();
+			LOG.warn("Term \"%s\" failed: %s", term, e.toString());
+		}
+	}
+
+	private static EnrichedRecord toRecord(String term, ItunesResult result, Track track) {
+		EnrichedRecord record = new EnrichedRecord();
+		record.term = term;
+		record.wrapperType = result.wrapperType;
+		record.kind = result.kind;
+		record.artworkUrl100 = result.artworkUrl100;
+		record.artistName = result.artistName;
+		record.trackName = result.trackName;
+		record.country = result.country;
+		record.currency = result.currency;
+		record.releaseDate = result.releaseDate;
+		if (track != null) {
+			record.track_rating = track.track_rating;
+			record.commontrack_id = track.commontrack_id;
+		}
+		return record;
+	}
+
+	private void report(long start, int total) {
+		double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+		System.out.printf(Locale.ROOT, "[%.0fs] terms %d/%d (%d failed), records %d (%d rated), %.1f terms/s,"
+				+ " %.1f records/s, %s%n", seconds, termsDone.get(), total, termsFailed.get(), records.get(),
+				rated.get(), termsDone.get() / seconds, records.get() / seconds, ApiApp.RESPONSE_CACHE.stats());
+	}
+
+	/**
+	 * Returns the trimmed, non blank lines of a file, or none if it does not exist.
+	 */
+	private static Set<String> readLines(File file) throws IOException {
+		Set<String> lines = new LinkedHashSet<String>();
+		if (!file.isFile()) {
+			return lines;
+		}
+		try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isBlank()) {
+					lines.add(line.trim());
+				}
+			}
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,80 @@
+package cs1302.api;
+
+import java.time.Duration;
+
+/**
+ * @author Shivam Mishra
+ * Stops calling a service that keeps failing. After {@code failureThreshold}
+ * failures in a row the breaker opens and every request is refused until
+ * {@code openDuration} has passed; then a single trial request is let through,
+ * which either closes the breaker again or reopens it.
+ */
+public class CircuitBreaker {
+
+	/** State of the breaker. */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private static final Log LOG = Log.get(CircuitBreaker.class);
+
+	private final int failureThreshold;
+	private final long openNanos;
+	private State state = State.CLOSED;
+	private int failures = 0;
+	private long openedAt;
+	private boolean trialInFlight = false;
+
+	/**
+	 * Constructs a closed {@code CircuitBreaker}.
+	 *
+	 * @param failureThreshold consecutive failures that open the breaker
+	 * @param openDuration     how long the breaker stays open
+	 */
+	public CircuitBreaker(int failureThreshold, Duration openDuration) {
+		this.failureThreshold = failureThreshold;
+		this.openNanos = openDuration.toNanos();
+	}
+
+	/**
+	 * Returns whether a request may be sent now.
+	 *
+	 * @return boolean
+	 */
+	public synchronized boolean allowRequest() {
+		if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+			state = State.HALF_OPEN;
+			trialInFlight = false;
+		}
+		if (state == State.HALF_OPEN) {
+			if (trialInFlight) {
+				return false;
+			}
+			trialInFlight = true;
+			return true;
+		}
+		return state == State.CLOSED;
+	}
+
+	public synchronized void recordSuccess() {
+		failures = 0;
+		state = State.CLOSED;
+		trialInFlight = false;
+	}
+
+	public synchronized void recordFailure() {
+		failures++;
+		if (state == State.HALF_OPEN || failures >= failureThreshold) {
+			if (state != State.OPEN) {
+				LOG.warn("Circuit opened after %s failures", failures);
+			}
+			state = State.OPEN;
+			openedAt = System.nanoTime();
+			trialInFlight = false;
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
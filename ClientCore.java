@@ -0,0 +1,313 @@
+package cs1302.api;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * @author Shivam Mishra
+ * The one place API requests are sent from, shared by every provider. A
+ * provider describes each of its endpoints once as an {@link Endpoint} and
+ * hands {@link #get} a request, a cache key and a decoder; the core answers from
+ * the {@link ResponseCache} when it can, then from the
+ * {@link SharedCacheClient} other machines fill, lets concurrent calls for the
+ * same key share one request, applies the endpoint's timeout, sends through its
+ * {@link QuotaGuard} or retries server errors with backoff itself, records
+ * {@link Metrics}, decodes the body off the caller's thread and caches what
+ * decoded to a result, and, for the endpoint's shorter {@code missingTtl}, what
+ * decoded to none. Everything is asynchronous; blocking callers {@code join}
+ * the future.
+ *
+ * <pre>
+ * Endpoint books = ClientCore.endpoint("openlibrary.search").ttl(Duration.ofHours(6)).build();
+ * core.get(books, cacheKey, request, ClientCore.json(OpenLibraryResult.class));
+ * </pre>
+ */
+public final class ClientCore {
+
+	/** Turns a response body into a result, or {@code null} when it holds none. */
+	public interface Decoder<T> {
+		T decode(String body) throws Exception;
+	}
+
+	/**
+	 * Thrown through the returned future when an endpoint answers with a status
+	 * it does not accept.
+	 */
+	public static class StatusException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final int status;
+
+		public StatusException(String endpoint, int status) {
+			super(endpoint + " answered " + status);
+			this.status = status;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+	}
+
+	/** How the requests of one endpoint are sent, cached and checked. */
+	public static final class Endpoint {
+		final String name;
+		final Duration ttl;
+		final Duration missingTtl;
+		final Duration timeout;
+		final QuotaGuard guard;
+		final int retries;
+		final int[] accepted;
+		final ToIntFunction<HttpResponse<String>> status;
+		final SingleFlight<String, Object> flights = new SingleFlight<String, Object>();
+		final Metrics.Endpoint metrics;
+
+		private Endpoint(Builder builder) {
+			this.name = builder.name;
+			this.ttl = builder.ttl;
+			this.missingTtl = builder.missingTtl;
+			this.timeout = builder.timeout;
+			this.guard = builder.guard;
+			this.retries = builder.retries;
+			this.accepted = builder.accepted;
+			this.status = builder.status;
+			this.metrics = guard == null ? Metrics.endpoint(name) : null; // a guard records its own
+			Metrics.gauge(name + ".inFlight", flights::size);
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/** Builds an {@link Endpoint}. */
+	public static final class Builder {
+		private final String name;
+		private Duration ttl = Duration.ZERO;
+		private Duration missingTtl = Duration.ZERO;
+		private Duration timeout;
+		private QuotaGuard guard;
+		private int retries = 2;
+		private int[] accepted = { 200 };
+		private ToIntFunction<HttpResponse<String>> status = HttpResponse::statusCode;
+
+		private Builder(String name) {
+			this.name = name;
+		}
+
+		/** How long decoded results stay cached; zero, the default, caches nothing. */
+		public Builder ttl(Duration ttl) {
+			this.ttl = ttl;
+			return this;
+		}
+
+		/**
+		 * How long bodies that decoded to no result stay cached, so other callers
+		 * and machines are told "not found" without asking again; zero, the
+		 * default, caches none.
+		 */
+		public Builder missingTtl(Duration missingTtl) {
+			this.missingTtl = missingTtl;
+			return this;
+		}
+
+		/** Timeout of requests built without one. */
+		public Builder timeout(Duration timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		/** Sends through {@code guard}, which then does the rate limiting and retries. */
+		public Builder guard(QuotaGuard guard) {
+			this.guard = guard;
+			return this;
+		}
+
+		/** Retries of failed or 5xx requests when there is no guard, 2 by default. */
+		public Builder retries(int retries) {
+			this.retries = retries;
+			return this;
+		}
+
+		/** Statuses whose body is decoded, 200 by default. */
+		public Builder accept(int... statuses) {
+			this.accepted = statuses.clone();
+			return this;
+		}
+
+		/** Reads the status of a response, for APIs reporting it in the body. */
+		public Builder status(ToIntFunction<HttpResponse<String>> status) {
+			this.status = status;
+			return this;
+		}
+
+		public Endpoint build() {
+			return new Endpoint(this);
+		}
+	}
+
+	private static final Log LOG = Log.get(ClientCore.class);
+
+	private final HttpClient client;
+	private final ResponseCache cache;
+	private final SharedCacheClient shared;
+
+	/**
+	 * Constructs a {@code ClientCore}.
+	 *
+	 * @param client the client every request goes through
+	 * @param cache  cache of decoded bodies
+	 * @param shared cache shared with other machines, asked on a miss of
+	 *               {@code cache}
+	 */
+	public ClientCore(HttpClient client, ResponseCache cache, SharedCacheClient shared) {
+		this.client = client;
+		this.cache = cache;
+		this.shared = shared;
+	}
+
+	/**
+	 * Returns a builder for an endpoint named {@code name}, e.g.
+	 * {@code itunes.search}; the name is also its metrics name.
+	 *
+	 * @param name
+	 * @return Builder
+	 */
+	public static Builder endpoint(String name) {
+		return new Builder(name);
+	}
+
+	/**
+	 * Returns a decoder reading the body as JSON into {@code type}.
+	 *
+	 * @param type
+	 * @return Decoder<T>
+	 */
+	public static <T> Decoder<T> json(Class<T> type) {
+		return body -> ApiApp.GSON.fromJson(body, type);
+	}
+
+	/**
+	 * Returns the decoded result of a request: from the cache if it holds
+	 * {@code cacheKey}, then from the shared cache, otherwise from the network,
+	 * sharing the request with concurrent calls for the same key. While this
+	 * client fetches a key other machines asking the shared cache for it wait.
+	 * The future holds {@code null} when the body decoded to no result, and fails
+	 * with a {@link StatusException} when the status is not accepted, or with
+	 * the error of the last attempt.
+	 *
+	 * @param endpoint
+	 * @param cacheKey normalized key, see {@link ResponseCache#key}
+	 * @param request
+	 * @param decoder
+	 * @return CompletableFuture<T>
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompletableFuture<T> get(Endpoint endpoint, String cacheKey, HttpRequest request, Decoder<T> decoder) {
+		Optional<String> cached = endpoint.ttl.isZero() ? Optional.empty() : cache.get(cacheKey);
+		if (cached.isPresent()) {
+			try {
+				return CompletableFuture.completedFuture(decoder.decode(cached.get()));
+			} catch (Exception e) {
+				LOG.warn("Cached %s response no longer decodes: %s", endpoint.name, e.toString());
+			}
+		}
+		if (endpoint.ttl.isZero() || !shared.isEnabled()) {
+			return (CompletableFuture<T>) endpoint.flights.execute(cacheKey,
+					() -> fetch(endpoint, cacheKey, request, decoder, false));
+		}
+		return (CompletableFuture<T>) endpoint.flights.execute(cacheKey, () -> shared.lookup(cacheKey)
+				.thenComposeAsync(lookup -> {
+					if (lookup.getBody() != null) {
+						try {
+							Object value = decoder.decode(lookup.getBody());
+							if (value != null || !endpoint.missingTtl.isZero()) {
+								Duration ttl = value != null ? endpoint.ttl : endpoint.missingTtl;
+								cache.put(cacheKey, lookup.getBody(), ttl);
+								return CompletableFuture.completedFuture(value);
+							}
+						} catch (Exception e) {
+							LOG.warn("Shared %s response no longer decodes: %s", endpoint.name, e.toString());
+						}
+					}
+					return fetch(endpoint, cacheKey, request, decoder, lookup.isLeased());
+				}));
+	}
+
+	/**
+	 * Fetches and decodes a request from the network, caching what decoded to a
+	 * result, or to none if the endpoint has a {@code missingTtl}, locally and in
+	 * the shared cache. A lease on the key is given up once done, which the
+	 * shared cache ignores if the body was put.
+	 */
+	private <T> CompletableFuture<Object> fetch(Endpoint endpoint, String cacheKey, HttpRequest request,
+			Decoder<T> decoder, boolean leased) {
+		CompletableFuture<Object> fetched = send(endpoint, request).thenApplyAsync(response -> {
+			int status = endpoint.status.applyAsInt(response);
+			if (Arrays.stream(endpoint.accepted).noneMatch(accepted -> accepted == status)) {
+				throw new CompletionException(new StatusException(endpoint.name, status));
+			}
+			T value;
+			try {
+				value = decoder.decode(response.body());
+			} catch (Exception e) {
+				throw new CompletionException(new IOException(endpoint.name + " response unreadable", e));
+			}
+			Duration ttl = value != null ? (status == 200 ? endpoint.ttl : Duration.ZERO) : endpoint.missingTtl;
+			if (!ttl.isZero() && !endpoint.ttl.isZero()) {
+				cache.put(cacheKey, response.body(), ttl);
+				shared.put(cacheKey, response.body(), ttl);
+			}
+			return (Object) value;
+		});
+		if (leased) {
+			fetched.whenComplete((value, error) -> shared.release(cacheKey));
+		}
+		return fetched;
+	}
+
+	/**
+	 * Sends a request of an endpoint without caching or decoding it. The future
+	 * holds the last response, which may be an error status once retries are
+	 * used up.
+	 *
+	 * @param endpoint
+	 * @param request
+	 * @return CompletableFuture<HttpResponse<String>>
+	 */
+	public CompletableFuture<HttpResponse<String>> send(Endpoint endpoint, HttpRequest request) {
+		HttpRequest timed = request;
+		if (endpoint.timeout != null && request.timeout().isEmpty()) {
+			timed = HttpRequest.newBuilder(request, (name, value) -> true).timeout(endpoint.timeout).build();
+		}
+		if (endpoint.guard != null) {
+			return endpoint.guard.sendAsync(timed);
+		}
+		return attempt(endpoint, timed, 0);
+	}
+
+	private CompletableFuture<HttpResponse<String>> attempt(Endpoint endpoint, HttpRequest request, int attempt) {
+		long start = System.nanoTime();
+		return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+				.whenComplete((response, error) -> endpoint.metrics.record(start, response, error))
+				.handle((response, error) -> {
+					boolean failed = error != null || response.statusCode() >= 500;
+					if (!failed || attempt >= endpoint.retries) {
+						return error == null ? CompletableFuture.completedFuture(response)
+								: CompletableFuture.<HttpResponse<String>>failedFuture(error);
+					}
+					long delay = QuotaGuard.backoff(attempt);
+					LOG.debug("%s failed, retrying in %s ms", endpoint.name, delay);
+					return CompletableFuture.runAsync(() -> {
+					}, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+							.thenCompose(ignored -> attempt(endpoint, request, attempt + 1));
+				}).thenCompose(next -> next);
+	}
+}
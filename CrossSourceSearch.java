@@ -0,0 +1,215 @@
+package cs1302.api;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Shivam Mishra
+ * Searches the other registered {@link SearchProvider}s, such as musixmatch and
+ * Open Library, in parallel with the iTunes search the list is built from, and
+ * joins what they find to the tracks by normalized title and artist or author.
+ * Every source has a latency budget, {@code budget.<name>} in
+ * {@link AppConfig}, counted from the start of the search: a source still
+ * busy when its budget runs out is left out of the join, so a slow provider
+ * costs partial results instead of holding up the screen. Its request still
+ * completes in the background and lands in the response cache for next time.
+ *
+ * <pre>
+ * CrossSourceSearch sources = CrossSourceSearch.start(query, limit, "itunes");
+ * ... stream the iTunes results ...
+ * sources.await();
+ * List&lt;Track&gt; tracks = sources.matches(musixMatch, trackName, artistName);
+ * </pre>
+ */
+public class CrossSourceSearch {
+
+	/** Sources that missed their budget so far, by name. */
+	private static final Map<String, AtomicLong> LATE = new ConcurrentHashMap<String, AtomicLong>();
+	private static final Log LOG = Log.get(CrossSourceSearch.class);
+
+	/** One source being searched, and its results by join key once they are in. */
+	private static final class Source<R> {
+		final SearchProvider<R> provider;
+		final CompletableFuture<List<R>> answer;
+		final Map<String, List<R>> byPair = new HashMap<String, List<R>>();
+		final Map<String, List<R>> byTitle = new HashMap<String, List<R>>();
+		boolean joined;
+		boolean late;
+
+		Source(SearchProvider<R> provider, CompletableFuture<List<R>> answer) {
+			this.provider = provider;
+			this.answer = answer;
+		}
+
+		/** Indexes the results, or marks the source late if they are not in. */
+		void join() {
+			joined = true;
+			List<R> results = answer.getNow(null);
+			if (results == null) {
+				late = true;
+				LATE.computeIfAbsent(provider.name(), CrossSourceSearch::lateCounter).incrementAndGet();
+				LOG.debug("%s missed its budget", provider.name());
+				return;
+			}
+			for (R result : results) {
+				String title = titleKey(provider.titleOf(result));
+				if (title.isEmpty()) {
+					continue;
+				}
+				byTitle.computeIfAbsent(title, k -> new ArrayList<R>()).add(result);
+				byPair.computeIfAbsent(title + '\u0000' + creatorKey(provider.creatorOf(result)),
+						k -> new ArrayList<R>()).add(result);
+			}
+		}
+	}
+
+	private final Map<String, Source<?>> sources = new HashMap<String, Source<?>>();
+
+	private CrossSourceSearch() {
+	}
+
+	/**
+	 * Starts searching every registered provider except {@code primary}, each
+	 * bounded by its budget.
+	 *
+	 * @param query
+	 * @param limit   most results asked of each source
+	 * @param primary name of the provider the caller searches itself
+	 * @return CrossSourceSearch
+	 */
+	public static CrossSourceSearch start(String query, int limit, String primary) {
+		CrossSourceSearch search = new CrossSourceSearch();
+		for (SearchProvider<?> provider : Providers.all()) {
+			if (!provider.name().equals(primary)) {
+				search.sources.put(provider.name(), ask(provider, query, limit));
+			}
+		}
+		return search;
+	}
+
+	private static <R> Source<R> ask(SearchProvider<R> provider, String query, int limit) {
+		Duration budget = ApiApp.CONFIG.sourceBudget(provider.name());
+		CompletableFuture<List<R>> answer;
+		try {
+			answer = provider.searchAsync(query, limit);
+		} catch (RuntimeException e) {
+			answer = CompletableFuture.failedFuture(e);
+		}
+		answer = answer.exceptionally(error -> {
+			LOG.debug("%s search failed: %s", provider.name(), error.toString());
+			return new ArrayList<R>(); // a failed source joins nothing, it is not late
+		}).completeOnTimeout(null, budget.toMillis(), TimeUnit.MILLISECONDS);
+		return new Source<R>(provider, answer);
+	}
+
+	/**
+	 * Waits until every source has answered or run out of budget, then joins
+	 * what came in. Returns at once when called again.
+	 *
+	 * @throws InterruptedException if the search was cancelled while waiting
+	 */
+	public void await() throws InterruptedException {
+		try {
+			CompletableFuture.allOf(sources.values().stream().map(source -> source.answer)
+					.toArray(CompletableFuture[]::new)).get();
+		} catch (ExecutionException e) {
+			LOG.warn("Source search failed: %s", e.getCause().toString()); // not expected, failures are mapped
+		}
+		synchronized (this) {
+			for (Source<?> source : sources.values()) {
+				if (!source.joined) {
+					source.join();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the results of {@code provider} with the same title and creator,
+	 * empty if the source found none or was late. Call after {@link #await}.
+	 *
+	 * @param provider
+	 * @param title
+	 * @param creator
+	 * @return List<R>
+	 */
+	public <R> List<R> matches(SearchProvider<R> provider, String title, String creator) {
+		return lookup(provider, titleKey(title) + '\u0000' + creatorKey(creator), false);
+	}
+
+	/**
+	 * Returns the results of {@code provider} with the same title, whoever
+	 * made them, e.g. the book a soundtrack is named after.
+	 *
+	 * @param provider
+	 * @param title
+	 * @return List<R>
+	 */
+	public <R> List<R> titleMatches(SearchProvider<R> provider, String title) {
+		return lookup(provider, titleKey(title), true);
+	}
+
+	/**
+	 * Returns the names of the sources that missed their budget.
+	 *
+	 * @return List<String>
+	 */
+	public synchronized List<String> late() {
+		List<String> late = new ArrayList<String>();
+		for (Source<?> source : sources.values()) {
+			if (source.late) {
+				late.add(source.provider.name());
+			}
+		}
+		return late;
+	}
+
+	@SuppressWarnings("unchecked")
+	private synchronized <R> List<R> lookup(SearchProvider<R> provider, String key, boolean titleOnly) {
+		Source<R> source = (Source<R>) sources.get(provider.name()); // registered under its own name
+		if (source == null || source.provider != provider) {
+			return new ArrayList<R>();
+		}
+		List<R> found = (titleOnly ? source.byTitle : source.byPair).get(key);
+		return found == null ? new ArrayList<R>() : found;
+	}
+
+	/**
+	 * Returns the words of a title without what sources disagree on: parts in
+	 * brackets such as "(Remastered)" and any "feat." credit.
+	 */
+	static String titleKey(String title) {
+		if (title == null) {
+			return "";
+		}
+		String plain = title.replaceAll("[(\\[][^)\\]]*[)\\]]", " ");
+		return String.join(" ", TrackIndex.tokenize(cutCredits(plain)));
+	}
+
+	/** Returns the words of the first named artist or author. */
+	static String creatorKey(String creator) {
+		if (creator == null) {
+			return "";
+		}
+		String first = cutCredits(creator).split("[,&]| x | and ", 2)[0];
+		return String.join(" ", TrackIndex.tokenize(first));
+	}
+
+	private static String cutCredits(String text) {
+		return text.split("(?i)\\s(feat\\.?|ft\\.|featuring)\\s", 2)[0];
+	}
+
+	private static AtomicLong lateCounter(String source) {
+		AtomicLong counter = new AtomicLong();
+		Metrics.gauge("search." + source + ".late", counter::get);
+		return counter;
+	}
+}
@@ -0,0 +1,80 @@
+package cs1302.api;
+
+/**
+ * @author Shivam Mishra
+ * Set of track names seen so far in a paged search, used to drop repeats across
+ * pages. Only a 64 bit hash of each name is kept, in an open addressing
+ * {@code long[]}, so a name costs 16 to 32 bytes instead of a
+ * {@code HashSet} entry and the string it holds, and nothing is rebuilt per
+ * page. Two different names sharing a hash would be taken as repeats, which at
+ * 64 bits does not happen for catalogs of any realistic size.
+ */
+public class DistinctNames {
+
+	private static final long EMPTY = 0; // no name hashes to 0, see hash()
+
+	private long[] table = new long[256]; // two pages of 50 names before the first growth
+	private int size;
+
+	/**
+	 * Adds a name.
+	 *
+	 * @param name
+	 * @return {@code true} if the name was not seen before
+	 */
+	public boolean add(String name) {
+		long hash = hash(name);
+		int mask = table.length - 1;
+		int slot = (int) mix(hash) & mask;
+		while (table[slot] != EMPTY) {
+			if (table[slot] == hash) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = hash;
+		if (++size * 2 > table.length) {
+			grow();
+		}
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void grow() {
+		long[] old = table;
+		table = new long[old.length * 2];
+		int mask = table.length - 1;
+		for (long hash : old) {
+			if (hash != EMPTY) {
+				int slot = (int) mix(hash) & mask;
+				while (table[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = hash;
+			}
+		}
+	}
+
+	/** FNV-1a over the chars of the name; {@code null} is a name of its own. */
+	private static long hash(String name) {
+		long hash = 0xcbf29ce484222325L;
+		if (name == null) {
+			return 1;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			hash ^= name.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash == EMPTY || hash == 1 ? 2 : hash;
+	}
+
+	/** Spreads the high bits into the low ones used for the slot. */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		return hash ^ (hash >>> 33);
+	}
+}
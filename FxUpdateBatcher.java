@@ -0,0 +1,63 @@
+package cs1302.api;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * @author Shivam Mishra
+ * Coalesces screen updates posted from background threads. Instead of one
+ * {@code Platform.runLater} per event, updates are queued and an
+ * {@code AnimationTimer} applies everything queued so far once per pulse, so a
+ * burst of musixmatch responses costs at most one batch per frame. The timer
+ * only runs while there is something to apply.
+ */
+public class FxUpdateBatcher {
+
+	private static final Log LOG = Log.get(FxUpdateBatcher.class);
+
+	private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	private final AnimationTimer pulse = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			drain();
+			scheduled.set(false);
+			if (pending.isEmpty()) {
+				stop();
+			} else {
+				scheduled.set(true); // something arrived after the drain, keep running
+			}
+		}
+	};
+
+	/**
+	 * Queues an update to run on the JavaFX application thread with the next
+	 * pulse. Can be called from any thread.
+	 *
+	 * @param update
+	 */
+	public void post(Runnable update) {
+		pending.add(update);
+		if (scheduled.compareAndSet(false, true)) {
+			Platform.runLater(pulse::start);
+		}
+	}
+
+	/**
+	 * Runs every queued update. Must be called on the JavaFX application thread.
+	 */
+	private void drain() {
+		Runnable update;
+		while ((update = pending.poll()) != null) {
+			try {
+				update.run();
+			} catch (RuntimeException e) {
+				LOG.error("FX update failed", e); // one bad update must not drop the rest of the batch
+			}
+		}
+	}
+}
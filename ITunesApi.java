@@ -1,24 +1,58 @@
 package cs1302.api;
 
-import java.net.URI;
-import java.net.URLEncoder;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
-public class ITunesApi {
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+public class ITunesApi implements SearchProvider<ITunesApi.ItunesResult> {
+
+	private static final String SEARCH_ENDPOINT = ApiApp.CONFIG.itunesUrl(); // a local stub server in benchmarks
+	private static final RequestTemplate SEARCH_TEMPLATE = RequestTemplate.builder(SEARCH_ENDPOINT).param("term")
+			.fixed("limit", ApiApp.LIMIT).param("media").param("offset").build();
+	private static final Duration SEARCH_TTL = Duration.ofHours(6); // catalog changes slowly
+	private static final Metrics.Endpoint SEARCH_METRICS = Metrics.endpoint("itunes.search");
+	private static final Log LOG = Log.get(ITunesApi.class);
 	
+	/**
+	 * One page of a search: the results not seen on earlier pages, and how many
+	 * results the response held, repeats included, which tells whether more pages
+	 * follow.
+	 */
+	static class Page {
+		final List<ItunesResult> results;
+		final int received;
+
+		Page(List<ItunesResult> results, int received) {
+			this.results = results;
+			this.received = received;
+		}
+	}
+
 	/**@author Shivam Mishra
 	 * Represents a response from the iTunes Search API. This is used by Gson to
 	 * create an object from the JSON response body. This class is provided with
 	 * project's starter code, and the instance variables are intentionally set
 	 * to package private visibility.
 	 */
-	public class ItunesResponse {
+	public static class ItunesResponse {
 	    int resultCount;
 	    ItunesResult[] results;
 	} // ItunesResponse
@@ -30,7 +64,7 @@ public class ITunesApi {
 	 * intentionally set to package private visibility.
 	 * @see <a href="https://developer.apple.com/library/archive/documentation/AudioVideo/Conceptual/iTuneSearchAPI/UnderstandingSearchResults.html#//apple_ref/doc/uid/TP40017632-CH8-SW1">Understanding Search Results</a>
 	 */
-	public class ItunesResult {
+	public static class ItunesResult {
 	    String wrapperType;
 	    String kind;
 	    String artworkUrl100;
@@ -42,64 +76,335 @@ public class ITunesApi {
 	    // the rest of the result is intentionally omitted since we don't use it
 	} // ItunesResult
 
+	@Override
+	public String name() {
+		return "itunes";
+	}
+
+	@Override
+	public String titleOf(ItunesResult result) {
+		return result.trackName;
+	}
+
+	@Override
+	public String creatorOf(ItunesResult result) {
+		return result.artistName;
+	}
+
 	/**
-	 * 
-	 * This method interacts with the iTunesAPI and returns response based upon request.
+	 * Searches music without blocking the caller. The first page is fetched by
+	 * {@link #searchPage} on another thread, so it shares the compact cached copy
+	 * with {@link #search}, and its results are added to
+	 * {@link ApiApp#TRACK_INDEX}.
+	 *
+	 * @param query
+	 * @param limit
+	 * @return CompletableFuture<List<ItunesResult>>
+	 */
+	@Override
+	public CompletableFuture<List<ItunesResult>> searchAsync(String query, int limit) {
+		return CompletableFuture.supplyAsync(() -> {
+			Page page = searchPage(query, "music", 0, new DistinctNames(), null, false);
+			if (page == null) {
+				throw new CompletionException(new IOException("iTunes search failed: " + query));
+			}
+			List<ItunesResult> results = page.results;
+			return results.size() > limit ? new ArrayList<ItunesResult>(results.subList(0, limit)) : results;
+		});
+	}
+
+	/**
+	 * Searches iTunes and streams the distinct results (by {@code trackName}) to
+	 * {@code onResult} while the response body is still downloading. The body is
+	 * read as a stream with Gson's {@code JsonReader}, only the fields of
+	 * {@link ItunesResult} are kept, and the body is never held as one String:
+	 * what is cached is a compact copy of the response with those fields alone.
 	 * 
 	 * @param searchText
 	 * @param searchType
-	 * @return HttpResponse<String>
+	 * @param onResult   called with each distinct result in response order, may be
+	 *                   {@code null}
+	 * @return List<ItunesResult> the distinct results, or {@code null} if the
+	 *         request failed
 	 */
-	 HttpResponse<String> getApiResponse(String searchText, String searchType) {
+	List<ItunesResult> search(String searchText, String searchType, Consumer<ItunesResult> onResult) {
+		return search(searchText, searchType, onResult, true);
+	}
 
-		String term = URLEncoder.encode(searchText, StandardCharsets.UTF_8); // encoding searched text
-		String limit = URLEncoder.encode(ApiApp.LIMIT, StandardCharsets.UTF_8); // encoding limit value
-		String type = URLEncoder.encode(searchType, StandardCharsets.UTF_8); // encoding search type
-		String query = String.format("?term=%s&limit=%s&media=%s", term, limit, type); // creating a query for API
+	/**
+	 * Same as {@link #search(String, String, Consumer)}, but failures are only
+	 * logged unless {@code reportErrors} is set, for refreshes running behind
+	 * results already on screen. The results are added to
+	 * {@link ApiApp#TRACK_INDEX}.
+	 *
+	 * @param searchText
+	 * @param searchType
+	 * @param onResult
+	 * @param reportErrors whether a failure raises an alert
+	 * @return List<ItunesResult>
+	 */
+	List<ItunesResult> search(String searchText, String searchType, Consumer<ItunesResult> onResult,
+			boolean reportErrors) {
+		Page page = searchPage(searchText, searchType, 0, new DistinctNames(), onResult, reportErrors);
+		return page == null ? null : page.results;
+	}
 
-		HttpRequest request = HttpRequest.newBuilder().uri(URI.create("https://itunes.apple.com/search" + query))
-				.build();
-		// System.out.println(request.toString());
+	/**
+	 * Fetches the page of a search starting at result {@code offset}, streaming
+	 * the results whose {@code trackName} is not in {@code seen} to
+	 * {@code onResult} and adding them to {@code seen} and
+	 * {@link ApiApp#TRACK_INDEX}.
+	 *
+	 * @param searchText
+	 * @param searchType
+	 * @param offset       index of the first result, a multiple of the page size
+	 * @param seen         names of the results of earlier pages
+	 * @param onResult     may be {@code null}
+	 * @param reportErrors whether a failure raises an alert
+	 * @return Page, or {@code null} if the request failed
+	 */
+	Page searchPage(String searchText, String searchType, int offset, DistinctNames seen,
+			Consumer<ItunesResult> onResult, boolean reportErrors) {
+		Page page = fetchPage(searchText, searchType, offset, seen, onResult, reportErrors);
+		if (page != null) {
+			ApiApp.TRACK_INDEX.addResults(page.results);
+		}
+		return page;
+	}
 
-		HttpResponse<String> response;
+	private Page fetchPage(String searchText, String searchType, int offset, DistinctNames seen,
+			Consumer<ItunesResult> onResult, boolean reportErrors) {
+		HttpRequest request = SEARCH_TEMPLATE.request(null, searchText, searchType, String.valueOf(offset));
+		String cacheKey = searchCacheKey(searchText, searchType, offset);
+		Optional<String> cached = ApiApp.RESPONSE_CACHE.get(cacheKey);
+		boolean leased = false;
 		try {
-			response = ApiApp.HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-			// System.out.println(response.body());
+			if (cached.isPresent()) {
+				return parsePage(new StringReader(cached.get()), seen, onResult);
+			}
+			SharedCacheClient.Lookup shared = ApiApp.SHARED_CACHE.lookup(cacheKey).get(); // fetched elsewhere?
+			if (shared.getBody() != null) {
+				Page page = parsePage(new StringReader(shared.getBody()), seen, onResult);
+				ApiApp.RESPONSE_CACHE.put(cacheKey, shared.getBody(), SEARCH_TTL);
+				return page;
+			}
+			leased = shared.isLeased();
+			long start = System.nanoTime();
+			HttpResponse<InputStream> response;
+			try {
+				response = ApiApp.HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+			} catch (IOException e) {
+				SEARCH_METRICS.record(start, null, e);
+				throw e;
+			}
+			SEARCH_METRICS.record(start, response, null); // time to the headers, the body is parsed as it arrives
+			try (InputStream body = response.body()) {
+				if (response.statusCode() != 200) {
+					throw new IOException("response status code not 200:" + response.statusCode());
+				}
+				long[] bytesIn = new long[1];
+				InputStream counted = new FilterInputStream(body) {
+					@Override
+					public int read() throws IOException {
+						int b = super.read();
+						if (b >= 0) {
+							bytesIn[0]++;
+						}
+						return b;
+					}
+
+					@Override
+					public int read(byte[] buffer, int offset, int length) throws IOException {
+						int n = super.read(buffer, offset, length);
+						if (n > 0) {
+							bytesIn[0] += n;
+						}
+						return n;
+					}
+				};
+				// the cache gets the kept fields of every result, written as they are parsed
+				StringWriter compact = new StringWriter();
+				Page page = parsePage(new InputStreamReader(counted, StandardCharsets.UTF_8), seen, onResult,
+						new JsonWriter(compact));
+				SEARCH_METRICS.addBytesIn(bytesIn[0]);
+				ApiApp.RESPONSE_CACHE.put(cacheKey, compact.toString(), SEARCH_TTL);
+				ApiApp.SHARED_CACHE.put(cacheKey, compact.toString(), SEARCH_TTL);
+				return page;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // the search was cancelled
+			return null;
 		} catch (Exception e) {
-			response = null;
-			ApiApp.showAlert("Error", "Error", e.toString());
+			if (reportErrors) {
+				ApiApp.showAlert("Error", "Error", "URL: " + request + "\n" + "Exception: " + e);
+			} else {
+				LOG.warn("iTunes search failed: %s", e.toString());
+			}
+			return null;
+		} finally {
+			if (leased) {
+				ApiApp.SHARED_CACHE.release(cacheKey); // ignored when the body was put
+			}
 		}
+	}
 
-		return response;
+	/**
+	 * Returns whether the results of a search are cached, so fetching them again
+	 * would not reach iTunes.
+	 *
+	 * @param searchText
+	 * @param searchType
+	 * @return boolean
+	 */
+	static boolean isCached(String searchText, String searchType) {
+		return ApiApp.RESPONSE_CACHE.contains(searchCacheKey(searchText, searchType, 0));
+	}
+
+	private static String searchCacheKey(String searchText, String searchType, int offset) {
+		if (offset == 0) { // same key as before paging, so cached first pages stay valid
+			return ResponseCache.key(SEARCH_ENDPOINT, "term", searchText, "limit", ApiApp.LIMIT, "media", searchType);
+		}
+		return ResponseCache.key(SEARCH_ENDPOINT, "term", searchText, "limit", ApiApp.LIMIT, "media", searchType,
+				"offset", String.valueOf(offset));
 	}
 
 
 	/**
+	 * Reads an iTunes search response from {@code json} one result at a time,
+	 * keeping only the first result of each {@code trackName}.
 	 * 
-	 * This method takes response from the API as input and using GSON, extracts
-	 * distinct track URIs.
+	 * @param json
+	 * @param onResult called with each distinct result, may be {@code null}
+	 * @return List<ItunesResult>
+	 * @throws IOException if the JSON is malformed or cannot be read
+	 */
+	List<ItunesResult> parseResults(Reader json, Consumer<ItunesResult> onResult) throws IOException {
+		return parsePage(json, new DistinctNames(), onResult).results;
+	}
+
+	/**
+	 * Same as {@link #parseResults}, but also drops the results whose
+	 * {@code trackName} is already in {@code seen}, from earlier pages.
 	 * 
-	 * @param response
-	 * @return Set<String>
+	 * @param json
+	 * @param seen
+	 * @param onResult
+	 * @return Page
+	 * @throws IOException if the JSON is malformed or cannot be read
 	 */
-	 List<ItunesResult> getImageUriSet(HttpResponse<String> response) {
-		System.out.println("Inside getImageUriSet now..");
-		//System.out.println(response.body());
-		ItunesResponse res = ApiApp.GSON.fromJson(response.body(), ItunesResponse.class);
-		Set<String> uniqueTracks = new HashSet<>(); // to create a set of distinct image URIs
+	Page parsePage(Reader json, DistinctNames seen, Consumer<ItunesResult> onResult) throws IOException {
+		return parsePage(json, seen, onResult, null);
+	}
+
+	/**
+	 * Same as {@link #parsePage(Reader, DistinctNames, Consumer)}, also writing
+	 * every result read, repeats included, to {@code compact} as a response of
+	 * the same shape that holds only the fields of {@link ItunesResult}.
+	 *
+	 * @param json
+	 * @param seen
+	 * @param onResult
+	 * @param compact  closed when the page is read, may be {@code null}
+	 * @return Page
+	 * @throws IOException if the JSON is malformed or cannot be read
+	 */
+	private Page parsePage(Reader json, DistinctNames seen, Consumer<ItunesResult> onResult, JsonWriter compact)
+			throws IOException {
 		List<ItunesResult> results = new ArrayList<ItunesResult>();
-		for (int i = 0; i < res.results.length; i++) {
-			if (!uniqueTracks.contains(res.results[i].trackName)) {
-				uniqueTracks.add(res.results[i].trackName);
-				results.add(res.results[i]);
+		int received = 0;
+		if (compact != null) {
+			compact.setSerializeNulls(false);
+			compact.beginObject().name("results").beginArray();
+		}
+		try (JsonReader reader = new JsonReader(json)) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("results") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+					reader.skipValue(); // resultCount
+					continue;
+				}
+				reader.beginArray();
+				while (reader.hasNext()) {
+					ItunesResult result = readResult(reader);
+					received++;
+					if (compact != null) {
+						writeResult(compact, result);
+					}
+					if (seen.add(result.trackName)) {
+						results.add(result);
+						if (onResult != null) {
+							onResult.accept(result);
+						}
+					}
+				}
+				reader.endArray();
 			}
+			reader.endObject();
 		}
-
-		System.out.println("The total distinct track URIs are : " + uniqueTracks.size());
-		return results;
+		if (compact != null) {
+			compact.endArray().name("resultCount").value(received).endObject().close();
+		}
+		return new Page(results, received);
 	}
 
+	/**
+	 * Reads one result object, skipping every field {@link ItunesResult} does not
+	 * have. The fields with few distinct values are interned, so the results of
+	 * a page share one copy of e.g. the artist, country and currency.
+	 */
+	private ItunesResult readResult(JsonReader reader) throws IOException {
+		ItunesResult result = new ItunesResult();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (reader.peek() != JsonToken.STRING) {
+				reader.skipValue();
+				continue;
+			}
+			switch (name) {
+			case "wrapperType":
+				result.wrapperType = reader.nextString().intern();
+				break;
+			case "kind":
+				result.kind = reader.nextString().intern();
+				break;
+			case "artworkUrl100":
+				result.artworkUrl100 = reader.nextString();
+				break;
+			case "artistName":
+				result.artistName = reader.nextString().intern();
+				break;
+			case "trackName":
+				result.trackName = reader.nextString();
+				break;
+			case "country":
+				result.country = reader.nextString().intern();
+				break;
+			case "currency":
+				result.currency = reader.nextString().intern();
+				break;
+			case "releaseDate":
+				result.releaseDate = reader.nextString();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return result;
+	}
 
-
-	
+	/** Writes the fields {@link #readResult} keeps; null ones are left out. */
+	private static void writeResult(JsonWriter writer, ItunesResult result) throws IOException {
+		writer.beginObject();
+		writer.name("wrapperType").value(result.wrapperType);
+		writer.name("kind").value(result.kind);
+		writer.name("artworkUrl100").value(result.artworkUrl100);
+		writer.name("artistName").value(result.artistName);
+		writer.name("trackName").value(result.trackName);
+		writer.name("country").value(result.country);
+		writer.name("currency").value(result.currency);
+		writer.name("releaseDate").value(result.releaseDate);
+		writer.endObject();
+	}
 }
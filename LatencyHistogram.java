@@ -0,0 +1,95 @@
+package cs1302.api;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Shivam Mishra
+ * Lock free latency histogram with log-linear buckets: each power of two of
+ * microseconds is split into 8 buckets, so a percentile is off by at most about
+ * 12% while the whole histogram is a fixed array of counters. Recording is one
+ * array increment, cheap enough for every request.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder totalMicros = new LongAdder();
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * Records one latency.
+	 *
+	 * @param nanos
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		counts.incrementAndGet(bucketOf(micros));
+		totalMicros.add(micros);
+		count.increment();
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean latency in milliseconds, or 0 if nothing was recorded.
+	 *
+	 * @return double
+	 */
+	public double getMeanMillis() {
+		long n = count.sum();
+		return n == 0 ? 0 : totalMicros.sum() / 1000.0 / n;
+	}
+
+	/**
+	 * Returns the upper bound, in milliseconds, of the bucket holding the given
+	 * percentile, or 0 if nothing was recorded.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return double
+	 */
+	public double getPercentileMillis(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return upperBoundMicros(i) / 1000.0;
+			}
+		}
+		return upperBoundMicros(BUCKETS - 1) / 1000.0;
+	}
+
+	private static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros); // >= SUB_BUCKET_BITS
+		int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBoundMicros(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket + 1;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS));
+	}
+}
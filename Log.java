@@ -0,0 +1,235 @@
+package cs1302.api;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Shivam Mishra
+ * Leveled logger that formats and prints on a background thread, so the calling
+ * thread only pays for a level check and, when enabled, one queue offer. The
+ * level is set with {@code -Dcs1302.api.log=debug} (default {@code info}).
+ * Messages use {@link String#format} placeholders and are formatted on the
+ * writer thread; a {@link Throwable} as the last argument is printed with its
+ * stack trace. When the queue is full messages are dropped and counted rather
+ * than blocking a request.
+ */
+public final class Log {
+
+	/** Message levels, in increasing severity. */
+	public enum Level {
+		TRACE, DEBUG, INFO, WARN, ERROR, OFF
+	}
+
+	private static final int QUEUE_CAPACITY = 4096;
+	private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+	private static volatile int threshold = parseLevel(System.getProperty("cs1302.api.log", "info")).ordinal();
+	private static final BlockingQueue<Entry> QUEUE = new ArrayBlockingQueue<Entry>(QUEUE_CAPACITY);
+	private static final AtomicLong DROPPED = new AtomicLong();
+
+	static {
+		Thread writer = new Thread(Log::drainForever, "log-writer");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+	}
+
+	private final String name;
+
+	private Log(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns a logger named after {@code owner}.
+	 *
+	 * @param owner
+	 * @return Log
+	 */
+	public static Log get(Class<?> owner) {
+		return new Log(owner.getSimpleName());
+	}
+
+	/**
+	 * Sets the lowest level that is printed.
+	 *
+	 * @param level
+	 */
+	public static void setLevel(Level level) {
+		threshold = level.ordinal();
+	}
+
+	public static Level getLevel() {
+		return Level.values()[threshold];
+	}
+
+	/**
+	 * Returns the number of messages dropped because the queue was full.
+	 *
+	 * @return long
+	 */
+	public static long dropped() {
+		return DROPPED.get();
+	}
+
+	public boolean isEnabled(Level level) {
+		return level.ordinal() >= threshold;
+	}
+
+	public boolean isDebugEnabled() {
+		return Level.DEBUG.ordinal() >= threshold;
+	}
+
+	// The fixed arity overloads avoid allocating a varargs array when the level is
+	// off, which is the common case for debug messages on the request path.
+
+	public void debug(String message) {
+		if (Level.DEBUG.ordinal() >= threshold) {
+			enqueue(Level.DEBUG, message, null);
+		}
+	}
+
+	public void debug(String format, Object arg) {
+		if (Level.DEBUG.ordinal() >= threshold) {
+			enqueue(Level.DEBUG, format, new Object[] { arg });
+		}
+	}
+
+	public void debug(String format, Object arg1, Object arg2) {
+		if (Level.DEBUG.ordinal() >= threshold) {
+			enqueue(Level.DEBUG, format, new Object[] { arg1, arg2 });
+		}
+	}
+
+	public void info(String message) {
+		if (Level.INFO.ordinal() >= threshold) {
+			enqueue(Level.INFO, message, null);
+		}
+	}
+
+	public void info(String format, Object... args) {
+		if (Level.INFO.ordinal() >= threshold) {
+			enqueue(Level.INFO, format, args);
+		}
+	}
+
+	public void warn(String message) {
+		if (Level.WARN.ordinal() >= threshold) {
+			enqueue(Level.WARN, message, null);
+		}
+	}
+
+	public void warn(String format, Object... args) {
+		if (Level.WARN.ordinal() >= threshold) {
+			enqueue(Level.WARN, format, args);
+		}
+	}
+
+	public void error(String format, Object... args) {
+		if (Level.ERROR.ordinal() >= threshold) {
+			enqueue(Level.ERROR, format, args);
+		}
+	}
+
+	/**
+	 * Prints every queued message on the calling thread.
+	 */
+	public static void flush() {
+		List<Entry> entries = new ArrayList<Entry>();
+		QUEUE.drainTo(entries);
+		for (Entry entry : entries) {
+			write(entry);
+		}
+		System.out.flush();
+		System.err.flush();
+	}
+
+	private void enqueue(Level level, String format, Object[] args) {
+		Entry entry = new Entry(System.currentTimeMillis(), level, name, Thread.currentThread().getName(), format,
+				args);
+		if (!QUEUE.offer(entry)) {
+			DROPPED.incrementAndGet();
+		}
+	}
+
+	private static void drainForever() {
+		List<Entry> batch = new ArrayList<Entry>();
+		long reportedDrops = 0;
+		while (true) {
+			try {
+				batch.add(QUEUE.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			QUEUE.drainTo(batch);
+			for (Entry entry : batch) {
+				write(entry);
+			}
+			batch.clear();
+			long drops = DROPPED.get();
+			if (drops != reportedDrops) {
+				System.err.println("[log] " + (drops - reportedDrops) + " messages dropped, queue full");
+				reportedDrops = drops;
+			}
+		}
+	}
+
+	private static void write(Entry entry) {
+		PrintStream out = entry.level.compareTo(Level.WARN) >= 0 ? System.err : System.out;
+		Throwable thrown = null;
+		String message = entry.format;
+		if (entry.args != null && entry.args.length > 0) {
+			Object last = entry.args[entry.args.length - 1];
+			if (last instanceof Throwable) {
+				thrown = (Throwable) last;
+			}
+			try {
+				message = String.format(Locale.ROOT, entry.format, entry.args);
+			} catch (RuntimeException badFormat) {
+				message = entry.format + " " + Arrays.toString(entry.args);
+			}
+		}
+		String time = LocalTime.ofInstant(Instant.ofEpochMilli(entry.time), ZoneId.systemDefault()).format(TIME);
+		out.println(time + " " + entry.level + " [" + entry.thread + "] " + entry.logger + " - " + message);
+		if (thrown != null) {
+			thrown.printStackTrace(out);
+		}
+	}
+
+	static Level parseLevel(String value) {
+		try {
+			return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return Level.INFO;
+		}
+	}
+
+	/** A message waiting to be written. */
+	private static final class Entry {
+		final long time;
+		final Level level;
+		final String logger;
+		final String thread;
+		final String format;
+		final Object[] args;
+
+		Entry(long time, Level level, String logger, String thread, String format, Object[] args) {
+			this.time = time;
+			this.level = level;
+			this.logger = logger;
+			this.thread = thread;
+			this.format = format;
+			this.args = args;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package cs1302.api;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import cs1302.api.MusixMatchApi.Track;
+
+/**
+ * @author Shivam Mishra
+ * Gets lyrics without blocking the JavaFX application thread. Lyrics come from
+ * the {@link LyricsStore} when they were fetched before, and from musixmatch
+ * otherwise. Tracks that are on screen can be prefetched on a single low priority
+ * thread; the prefetch queue keeps only the most recently requested tracks, since
+ * those are the ones still visible, and a click on "See Lyrics" never waits
+ * behind it.
+ */
+public class LyricsService {
+
+	private static final int PREFETCH_QUEUE = 16;
+
+	private final MusixMatchApi mma;
+	private final LyricsStore store;
+	private final ExecutorService loader;
+	private final LinkedBlockingDeque<Runnable> prefetchQueue = new LinkedBlockingDeque<Runnable>();
+	private final ThreadPoolExecutor prefetcher;
+	private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+	private static final Log LOG = Log.get(LyricsService.class);
+
+	/**
+	 * Constructs a {@code LyricsService}.
+	 *
+	 * @param mma
+	 * @param store
+	 */
+	public LyricsService(MusixMatchApi mma, LyricsStore store) {
+		this.mma = mma;
+		this.store = store;
+		this.loader = Executors.newFixedThreadPool(2, runnable -> {
+			Thread thread = new Thread(runnable, "lyrics-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.prefetcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, prefetchQueue, runnable -> {
+			Thread thread = new Thread(runnable, "lyrics-prefetch");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		Metrics.gauge("lyrics.prefetch.queued", prefetchQueue::size);
+	}
+
+	/**
+	 * Returns the lyrics of a track, read from the store or fetched on a
+	 * background thread; stored lyrics complete the future after one disk read.
+	 * The future holds "Not Available" when musixmatch has none.
+	 *
+	 * @param track
+	 * @return CompletableFuture<String>
+	 */
+	public CompletableFuture<String> load(Track track) {
+		return CompletableFuture.supplyAsync(() -> fetch(track), loader);
+	}
+
+	/**
+	 * Queues a track for a low priority fetch of its lyrics. Tracks already queued,
+	 * and tracks musixmatch says have no lyrics, are ignored, and stored ones are
+	 * skipped on the prefetch thread, since cells call this on the JavaFX
+	 * application thread. When the queue is full the oldest request is dropped.
+	 *
+	 * @param track
+	 */
+	public void prefetch(Track track) {
+		if (track == null || track.has_lyrics == 0 || track.commontrack_id == 0
+				|| !queued.add(track.commontrack_id)) {
+			return;
+		}
+		while (prefetchQueue.size() >= PREFETCH_QUEUE) {
+			Runnable dropped = prefetchQueue.pollLast();
+			if (dropped instanceof Prefetch) {
+				queued.remove(((Prefetch) dropped).track.commontrack_id);
+			}
+		}
+		prefetchQueue.offerFirst(new Prefetch(track)); // newest first
+		prefetcher.prestartCoreThread();
+	}
+
+	/**
+	 * Stops the background threads.
+	 */
+	public void shutdown() {
+		loader.shutdownNow();
+		prefetcher.shutdownNow();
+	}
+
+	private String fetch(Track track) {
+		Optional<String> stored = track.commontrack_id == 0 ? Optional.empty() : store.get(track.commontrack_id);
+		if (stored.isPresent()) {
+			ApiApp.TRACK_INDEX.addLyrics(track.commontrack_id, stored.get()); // stored before the index existed
+			return stored.get();
+		}
+		String lyrics = mma.fetchLyrics(track.track_name, track.artist_name);
+		if (!"Not Available".equals(lyrics) && track.commontrack_id != 0) {
+			store.put(track.commontrack_id, lyrics);
+			ApiApp.TRACK_INDEX.addLyrics(track.commontrack_id, lyrics);
+		}
+		return lyrics;
+	}
+
+	/** A queued prefetch, kept as a class so a dropped one can be identified. */
+	private class Prefetch implements Runnable {
+		final Track track;
+
+		Prefetch(Track track) {
+			this.track = track;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (!store.contains(track.commontrack_id)) {
+					fetch(track);
+				}
+			} catch (RuntimeException e) {
+				LOG.warn("Lyrics prefetch failed: %s", e.toString());
+			} finally {
+				queued.remove(track.commontrack_id);
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package cs1302.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Shivam Mishra
+ * Gzip compressed lyrics on disk, one file per musixmatch {@code commontrack_id}.
+ * The common track id is shared by every release of a song, so lyrics fetched
+ * for one album version are found again for the others.
+ */
+public class LyricsStore {
+
+	private static final Log LOG = Log.get(LyricsStore.class);
+
+	private final File directory;
+
+	/**
+	 * Constructs a {@code LyricsStore} in {@code directory}, creating it if needed.
+	 *
+	 * @param directory
+	 */
+	public LyricsStore(File directory) {
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			LOG.warn("Lyrics store disabled, cannot create %s", directory);
+		}
+	}
+
+	/**
+	 * Returns the stored lyrics of a common track.
+	 *
+	 * @param commontrackId
+	 * @return Optional<String>
+	 */
+	public Optional<String> get(int commontrackId) {
+		File file = fileFor(commontrackId);
+		if (!file.isFile()) {
+			return Optional.empty();
+		}
+		try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			in.transferTo(bytes);
+			return Optional.of(bytes.toString(StandardCharsets.UTF_8));
+		} catch (IOException ioe) {
+			LOG.warn("Could not read lyrics %s: %s", commontrackId, ioe.toString());
+			file.delete();
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Returns whether lyrics are stored for a common track, without reading them.
+	 *
+	 * @param commontrackId
+	 * @return boolean
+	 */
+	public boolean contains(int commontrackId) {
+		return fileFor(commontrackId).isFile();
+	}
+
+	/**
+	 * Stores the lyrics of a common track, replacing any stored before.
+	 *
+	 * @param commontrackId
+	 * @param lyrics
+	 */
+	public void put(int commontrackId, String lyrics) {
+		if (!directory.isDirectory()) {
+			return;
+		}
+		File file = fileFor(commontrackId);
+		File tmp = new File(directory, file.getName() + ".tmp" + Thread.currentThread().getId());
+		try {
+			try (OutputStream out = new GZIPOutputStream(new FileOutputStream(tmp))) {
+				out.write(lyrics.getBytes(StandardCharsets.UTF_8));
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ioe) {
+			LOG.warn("Could not store lyrics %s: %s", commontrackId, ioe.toString());
+			tmp.delete();
+		}
+	}
+
+	private File fileFor(int commontrackId) {
+		return new File(directory, commontrackId + ".gz");
+	}
+}
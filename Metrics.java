@@ -0,0 +1,273 @@
+package cs1302.api;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+/**
+ * @author Shivam Mishra
+ * Counters for every outbound API call: a latency histogram, status code
+ * counts, errors and bytes received per endpoint, plus gauges such as cache hit
+ * counts and queue depths registered by the classes that own them. Recording
+ * only touches striped counters, so it is safe on the request path. The values
+ * are exposed as attributes of the {@code cs1302.api:type=Metrics} MBean and
+ * can be written to a JSON snapshot file at a fixed interval.
+ */
+public final class Metrics {
+
+	private static final Log LOG = Log.get(Metrics.class);
+	private static final Map<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<String, Endpoint>();
+	private static final Map<String, Supplier<Number>> GAUGES = new ConcurrentHashMap<String, Supplier<Number>>();
+	private static ScheduledExecutorService snapshots;
+
+	private Metrics() {
+	}
+
+	/** Counters of one endpoint. */
+	public static final class Endpoint {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<Integer, LongAdder>();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder bytesIn = new LongAdder();
+
+		private Endpoint() {
+		}
+
+		/**
+		 * Records a completed call. Bytes are counted when the body is a
+		 * {@code String} or {@code byte[]}; streamed bodies add theirs with
+		 * {@link #addBytesIn} once read.
+		 *
+		 * @param startNanos {@code System.nanoTime()} when the call was sent
+		 * @param response   the response, or {@code null} if the call failed
+		 * @param error      the failure, or {@code null}
+		 */
+		public void record(long startNanos, HttpResponse<?> response, Throwable error) {
+			latency.record(System.nanoTime() - startNanos);
+			if (response == null || error != null) {
+				errors.increment();
+				return;
+			}
+			statuses.computeIfAbsent(response.statusCode(), code -> new LongAdder()).increment();
+			Object body = response.body();
+			if (body instanceof String) {
+				bytesIn.add(((String) body).length()); // chars, close enough for mostly ASCII JSON
+			} else if (body instanceof byte[]) {
+				bytesIn.add(((byte[]) body).length);
+			}
+		}
+
+		public void addBytesIn(long bytes) {
+			bytesIn.add(bytes);
+		}
+
+		private void snapshot(String prefix, Map<String, Number> into) {
+			into.put(prefix + ".count", latency.getCount());
+			into.put(prefix + ".errors", errors.sum());
+			into.put(prefix + ".bytesIn", bytesIn.sum());
+			into.put(prefix + ".latency.meanMs", latency.getMeanMillis());
+			into.put(prefix + ".latency.p50Ms", latency.getPercentileMillis(50));
+			into.put(prefix + ".latency.p90Ms", latency.getPercentileMillis(90));
+			into.put(prefix + ".latency.p99Ms", latency.getPercentileMillis(99));
+			into.put(prefix + ".latency.maxMs", latency.getPercentileMillis(100));
+			statuses.forEach((code, counter) -> into.put(prefix + ".status." + code, counter.sum()));
+		}
+	}
+
+	/**
+	 * Returns the counters of an endpoint, creating them on first use.
+	 *
+	 * @param name endpoint name, e.g. {@code itunes.search}
+	 * @return Endpoint
+	 */
+	public static Endpoint endpoint(String name) {
+		return ENDPOINTS.computeIfAbsent(name, key -> new Endpoint());
+	}
+
+	/**
+	 * Registers a value read whenever a snapshot is taken, replacing any gauge of
+	 * the same name.
+	 *
+	 * @param name
+	 * @param value
+	 */
+	public static void gauge(String name, Supplier<Number> value) {
+		GAUGES.put(name, value);
+	}
+
+	/**
+	 * Returns every current value by name, in name order.
+	 *
+	 * @return Map<String, Number>
+	 */
+	public static Map<String, Number> snapshot() {
+		Map<String, Number> values = new TreeMap<String, Number>();
+		ENDPOINTS.forEach((name, endpoint) -> endpoint.snapshot("endpoint." + name, values));
+		GAUGES.forEach((name, gauge) -> {
+			try {
+				Number value = gauge.get();
+				values.put(name, value instanceof Double || value instanceof Float ? value.doubleValue()
+						: (Number) value.longValue()); // two attribute types for JMX
+			} catch (RuntimeException e) {
+				LOG.debug("gauge %s failed: %s", name, e);
+			}
+		});
+		values.put("log.dropped", Log.dropped());
+		return values;
+	}
+
+	/**
+	 * Registers the {@code cs1302.api:type=Metrics} MBean with the platform MBean
+	 * server. Registering again is a no-op.
+	 */
+	public static synchronized void registerMBean() {
+		try {
+			ObjectName name = new ObjectName("cs1302.api:type=Metrics");
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new JmxView(), name);
+			}
+		} catch (JMException e) {
+			LOG.warn("Could not register metrics MBean: %s", e);
+		}
+	}
+
+	/**
+	 * Writes a snapshot to {@code file} every {@code interval} on a daemon thread,
+	 * until {@link #stopSnapshots(File)} is called.
+	 *
+	 * @param file
+	 * @param interval
+	 */
+	public static synchronized void startSnapshots(File file, Duration interval) {
+		if (snapshots != null) {
+			return;
+		}
+		snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long millis = Math.max(1000, interval.toMillis());
+		snapshots.scheduleAtFixedRate(() -> writeSnapshot(file), millis, millis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the periodic snapshots and writes a last one.
+	 *
+	 * @param file
+	 */
+	public static synchronized void stopSnapshots(File file) {
+		if (snapshots != null) {
+			snapshots.shutdownNow();
+			snapshots = null;
+		}
+		writeSnapshot(file);
+	}
+
+	/**
+	 * Writes the current snapshot to {@code file} as JSON, replacing it
+	 * atomically so readers never see half a file.
+	 *
+	 * @param file
+	 */
+	public static void writeSnapshot(File file) {
+		Map<String, Object> document = new TreeMap<String, Object>();
+		document.put("timestamp", System.currentTimeMillis());
+		document.put("metrics", snapshot());
+		File tmp = new File(file.getPath() + ".tmp");
+		try {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				parent.mkdirs();
+			}
+			try (Writer out = new FileWriter(tmp, StandardCharsets.UTF_8)) {
+				ApiApp.GSON.toJson(document, out);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Could not write metrics snapshot: %s", e);
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Read only MBean whose attributes are the entries of {@link #snapshot()}.
+	 * The attribute list follows the endpoints and gauges registered so far.
+	 */
+	private static final class JmxView implements DynamicMBean {
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Number value = snapshot().get(attribute);
+			if (value == null) {
+				throw new AttributeNotFoundException(attribute);
+			}
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			Map<String, Number> values = snapshot();
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				Number value = values.get(attribute);
+				if (value != null) {
+					list.add(new Attribute(attribute, value));
+				}
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) {
+			throw new UnsupportedOperationException("metrics are read only");
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			throw new UnsupportedOperationException(actionName);
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			Map<String, Number> values = snapshot();
+			MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+			int i = 0;
+			for (Map.Entry<String, Number> entry : values.entrySet()) {
+				String type = entry.getValue() instanceof Double ? "double" : "long";
+				attributes[i++] = new MBeanAttributeInfo(entry.getKey(), type, entry.getKey(), true, false, false);
+			}
+			return new MBeanInfo(Metrics.class.getName(), "API call metrics", attributes, null, null, null);
+		}
+	}
+}
@@ -0,0 +1,399 @@
+package cs1302.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Shivam Mishra
+ * Local HTTP server standing in for the iTunes, musixmatch and Open Library
+ * APIs, for load tests and runs without network access. It replays recorded
+ * responses from {@code fixtures/}: a query with its own recording, e.g.
+ * {@code fixtures/itunes-search/dua-lipa.json} for the term "Dua Lipa", gets
+ * it, any other gets the endpoint's default, e.g.
+ * {@code fixtures/itunes-search.json}. Recordings are read from the
+ * {@code mock.fixtures} directory if set, then from the classpath. An iTunes
+ * search gets the slice of its recording picked by {@code offset} and
+ * {@code limit}, 50 results if no limit is given, like iTunes, so paging runs
+ * out of results where the recording does.
+ *
+ * <p>
+ * Every response is held back by a fixed latency plus an exponentially
+ * distributed jitter, which gives the long tail of a real network, and a share
+ * of the requests can be answered with a 500 or with a 429 carrying a
+ * {@code Retry-After}, so retries, the quota guards and the circuit breakers
+ * are exercised too. With {@code offline=true} the app starts one in process
+ * and points every endpoint at it. To run one on its own, e.g. for a
+ * {@link BatchEnricher} load test in another JVM:
+ *
+ * <pre>
+ * $ mvn clean compile
+ * $ mvn exec:java -Dexec.mainClass=cs1302.api.MockApiServer -Dcs1302.api.mock.port=8089 \
+ *       -Dcs1302.api.mock.latency=40ms -Dcs1302.api.mock.throttleRate=0.02
+ * </pre>
+ */
+public class MockApiServer implements AutoCloseable {
+
+	private static final String ITUNES_RECORDING = "itunes-search";
+	private static final int ITUNES_DEFAULT_LIMIT = 50;
+	private static final int ITUNES_MAX_LIMIT = 200;
+
+	/** Path, recording name and query parameter of each endpoint served. */
+	private static final String[][] ROUTES = {
+			{ "/search", ITUNES_RECORDING, "term" },
+			{ "/search.json", "openlibrary-search", "q" },
+			{ "/ws/1.1/track.search", "musixmatch-track-search", "q_track" },
+			{ "/ws/1.1/matcher.lyrics.get", "musixmatch-lyrics", "q_track" } };
+	private static final Log LOG = Log.get(MockApiServer.class);
+
+	/** Builds a {@link MockApiServer}. */
+	public static final class Builder {
+		private int port;
+		private Duration latency = Duration.ZERO;
+		private Duration jitter = Duration.ZERO;
+		private double errorRate;
+		private double throttleRate;
+		private File fixtures;
+
+		private Builder() {
+		}
+
+		/** Port to listen on, 0, the default, for any free one. */
+		public Builder port(int port) {
+			this.port = port;
+			return this;
+		}
+
+		/** Delay before every response. */
+		public Builder latency(Duration latency) {
+			this.latency = latency;
+			return this;
+		}
+
+		/** Mean of the random delay added to {@code latency}. */
+		public Builder jitter(Duration jitter) {
+			this.jitter = jitter;
+			return this;
+		}
+
+		/** Share of requests answered with a 500, from 0 to 1. */
+		public Builder errorRate(double errorRate) {
+			this.errorRate = errorRate;
+			return this;
+		}
+
+		/** Share of requests answered with a 429, from 0 to 1. */
+		public Builder throttleRate(double throttleRate) {
+			this.throttleRate = throttleRate;
+			return this;
+		}
+
+		/** Directory searched for recordings before the classpath. */
+		public Builder fixtures(File fixtures) {
+			this.fixtures = fixtures;
+			return this;
+		}
+
+		/**
+		 * Starts the server on the loopback interface.
+		 *
+		 * @return MockApiServer
+		 * @throws IOException if the port cannot be bound
+		 */
+		public MockApiServer start() throws IOException {
+			return new MockApiServer(this);
+		}
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final long latencyMillis;
+	private final double jitterMillis;
+	private final double errorRate;
+	private final double throttleRate;
+	private final File fixtures;
+	private final Map<String, Optional<byte[]>> recordings = new ConcurrentHashMap<String, Optional<byte[]>>();
+	private final Map<String, JsonArray> itunesResults = new ConcurrentHashMap<String, JsonArray>(); // parsed once
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong throttled = new AtomicLong();
+
+	private MockApiServer(Builder builder) throws IOException {
+		this.latencyMillis = builder.latency.toMillis();
+		this.jitterMillis = builder.jitter.toMillis();
+		this.errorRate = builder.errorRate;
+		this.throttleRate = builder.throttleRate;
+		this.fixtures = builder.fixtures;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 0);
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "mock-api");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (String[] route : ROUTES) {
+			server.createContext(route[0], exchange -> respond(exchange, route[1], route[2]));
+		}
+		server.setExecutor(executor);
+		server.start();
+		Metrics.gauge("mock.requests", requests::get);
+		Metrics.gauge("mock.errors", errors::get);
+		Metrics.gauge("mock.throttled", throttled::get);
+		LOG.info("Mock APIs listening on %s", baseUrl());
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns a builder set up from the {@code mock.*} settings of
+	 * {@code config}.
+	 *
+	 * @param config
+	 * @return Builder
+	 */
+	public static Builder builder(AppConfig config) {
+		String fixtures = config.getString("mock.fixtures", null);
+		return builder().port(config.getInt("mock.port", 0))
+				.latency(config.getDuration("mock.latency", Duration.ofMillis(40)))
+				.jitter(config.getDuration("mock.jitter", Duration.ofMillis(20)))
+				.errorRate(getRate(config, "mock.errorRate"))
+				.throttleRate(getRate(config, "mock.throttleRate"))
+				.fixtures(fixtures == null ? null : new File(fixtures));
+	}
+
+	/**
+	 * Starts a server from the settings of {@code config} and points the
+	 * endpoints of {@code config} at it. Must run before the API classes load,
+	 * since they read their endpoints then.
+	 *
+	 * @param config
+	 * @return MockApiServer
+	 */
+	static MockApiServer startOffline(AppConfig config) {
+		try {
+			MockApiServer mock = builder(config).start();
+			config.override("itunes.url", mock.itunesUrl());
+			config.override("musixmatch.url", mock.musixMatchUrl());
+			config.override("openlibrary.url", mock.openLibraryUrl());
+			LOG.warn("Offline mode, the APIs are answered by recordings");
+			return mock;
+		} catch (IOException ioe) {
+			throw new IllegalStateException("Could not start the mock APIs", ioe);
+		}
+	}
+
+	/**
+	 * Runs a server from the {@code cs1302.api.mock.*} settings until the JVM is
+	 * stopped, printing the settings that point a client at it.
+	 *
+	 * @param args unused
+	 * @throws IOException          if the port cannot be bound
+	 * @throws InterruptedException when stopped
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		MockApiServer mock = builder(new AppConfig(new File("resources/config.properties"))).start();
+		System.out.println("-Dcs1302.api.itunes.url=" + mock.itunesUrl());
+		System.out.println("-Dcs1302.api.musixmatch.url=" + mock.musixMatchUrl());
+		System.out.println("-Dcs1302.api.openlibrary.url=" + mock.openLibraryUrl());
+		Log.flush();
+		Thread.currentThread().join(); // the server threads are daemons
+	} // main
+
+	/**
+	 * Returns the iTunes search URL to set as {@code itunes.url}.
+	 *
+	 * @return String
+	 */
+	public String itunesUrl() {
+		return baseUrl() + "/search";
+	}
+
+	/**
+	 * Returns the musixmatch base URL to set as {@code musixmatch.url}.
+	 *
+	 * @return String
+	 */
+	public String musixMatchUrl() {
+		return baseUrl() + "/ws/1.1/";
+	}
+
+	/**
+	 * Returns the Open Library search URL to set as {@code openlibrary.url}.
+	 *
+	 * @return String
+	 */
+	public String openLibraryUrl() {
+		return baseUrl() + "/search.json";
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getThrottled() {
+		return throttled.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private String baseUrl() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	private void respond(HttpExchange exchange, String recording, String queryParam) throws IOException {
+		requests.incrementAndGet();
+		try {
+			long delay = latencyMillis;
+			if (jitterMillis > 0) {
+				delay += (long) (-jitterMillis * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+			}
+			if (delay > 0) {
+				Thread.sleep(delay);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		double roll = ThreadLocalRandom.current().nextDouble();
+		if (roll < throttleRate) {
+			throttled.incrementAndGet();
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			send(exchange, 429, "{\"error\":\"rate limited\"}".getBytes(StandardCharsets.UTF_8));
+		} else if (roll < throttleRate + errorRate) {
+			errors.incrementAndGet();
+			send(exchange, 500, "{\"error\":\"injected failure\"}".getBytes(StandardCharsets.UTF_8));
+		} else {
+			String rawQuery = exchange.getRequestURI().getRawQuery();
+			String query = queryValue(rawQuery, queryParam);
+			String name = query == null ? recording : recording + "/" + slug(query);
+			Optional<byte[]> body = load(name);
+			if (body.isEmpty()) {
+				name = recording;
+				body = load(recording);
+			}
+			if (body.isEmpty()) {
+				send(exchange, 404, "{\"error\":\"no recording\"}".getBytes(StandardCharsets.UTF_8));
+			} else if (recording.equals(ITUNES_RECORDING)) {
+				send(exchange, 200, itunesPage(name, body.get(), rawQuery));
+			} else {
+				send(exchange, 200, body.get());
+			}
+		}
+	}
+
+	private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/** Returns a recording by name, read once and then kept in memory. */
+	private Optional<byte[]> load(String name) {
+		return recordings.computeIfAbsent(name, key -> {
+			String path = key + ".json";
+			try {
+				if (fixtures != null) {
+					File file = new File(fixtures, path);
+					if (file.isFile()) {
+						return Optional.of(Files.readAllBytes(file.toPath()));
+					}
+				}
+				try (InputStream in = MockApiServer.class.getResourceAsStream("/fixtures/" + path)) {
+					return in == null ? Optional.empty() : Optional.of(in.readAllBytes());
+				}
+			} catch (IOException ioe) {
+				LOG.warn("Could not read recording %s: %s", path, ioe.toString());
+				return Optional.empty();
+			}
+		});
+	}
+
+	/**
+	 * Returns the results of an iTunes recording from {@code offset} on, at most
+	 * {@code limit} of them; none past the end of the recording.
+	 */
+	private byte[] itunesPage(String name, byte[] recording, String rawQuery) {
+		JsonArray results = itunesResults.computeIfAbsent(name, key -> {
+			String json = new String(recording, StandardCharsets.UTF_8);
+			return JsonParser.parseString(json).getAsJsonObject().getAsJsonArray("results");
+		});
+		int offset = Math.max(0, intValue(rawQuery, "offset", 0));
+		int limit = Math.max(0, Math.min(ITUNES_MAX_LIMIT, intValue(rawQuery, "limit", ITUNES_DEFAULT_LIMIT)));
+		JsonArray page = new JsonArray();
+		for (int i = offset; i < results.size() && i - offset < limit; i++) {
+			page.add(results.get(i));
+		}
+		JsonObject body = new JsonObject();
+		body.addProperty("resultCount", page.size());
+		body.add("results", page);
+		return body.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int intValue(String rawQuery, String name, int fallback) {
+		String value = queryValue(rawQuery, name);
+		try {
+			return value == null ? fallback : Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return fallback;
+		}
+	}
+
+	private static String queryValue(String rawQuery, String name) {
+		if (rawQuery == null) {
+			return null;
+		}
+		for (String pair : rawQuery.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0 && pair.substring(0, equals).equals(name)) {
+				return URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+			}
+		}
+		return null;
+	}
+
+	/** Returns the file name of a query's recording, e.g. "dua-lipa" for "Dua Lipa". */
+	private static String slug(String query) {
+		return query.trim().toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", "-").replaceAll("^-|-$", "");
+	}
+
+	private static double getRate(AppConfig config, String name) {
+		String value = config.getString(name, null);
+		try {
+			return value == null ? 0 : Math.max(0, Math.min(1, Double.parseDouble(value)));
+		} catch (NumberFormatException e) {
+			LOG.warn("Setting %s is not a rate: %s", name, value);
+			return 0;
+		}
+	}
+}
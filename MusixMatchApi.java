@@ -1,22 +1,24 @@
 package cs1302.api;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
-public class MusixMatchApi {
+public class MusixMatchApi implements SearchProvider<MusixMatchApi.Track> {
 
 	/**@author Shivam Mishra
 	 * Represents an MusixMatch API document.
@@ -26,6 +28,7 @@ public class MusixMatchApi {
 		String track_name;
 		int track_rating;
 		int commontrack_id;
+		int has_lyrics;
 		int artist_id;
 		String artist_name;
 
@@ -89,74 +92,200 @@ public class MusixMatchApi {
 		Track track;
 	}
 
-	private static final String TRACK_SEARCH_ENDPOINT = "https://api.musixmatch.com/ws/1.1/track.search?";
-	private static final String TRACK_GET_ENDPOINT = "https://api.musixmatch.com/ws/1.1/track.get?";
-	private static final String ARTIST_SEARCH_ENDPOINT = "http://api.musixmatch.com/ws/1.1/artist.search?";
-	private static final String LYRICS_ENDPOINT = "https://api.musixmatch.com/ws/1.1/matcher.lyrics.get?";
+	/** Base URL of the api, can be pointed at a local stub server for benchmarks. */
+	private static final String API_BASE = ApiApp.CONFIG.musixMatchUrl();
+	private static final String TRACK_SEARCH_ENDPOINT = API_BASE + "track.search?";
+	private static final String TRACK_GET_ENDPOINT = API_BASE + "track.get?";
+	private static final String ARTIST_SEARCH_ENDPOINT = API_BASE + "artist.search?";
+	private static final String LYRICS_ENDPOINT = API_BASE + "matcher.lyrics.get?";
+	private static final Duration TRACK_TTL = Duration.ofDays(1); // ratings drift slowly
+	private static final Duration LYRICS_TTL = Duration.ofDays(30); // lyrics almost never change
+	private static final Duration MISSING_TTL = Duration.ofMinutes(10); // tracks musixmatch does not know
+	private static final String NOT_AVAILABLE = "Not Available";
+
+	/** Per endpoint quota guards; track searches are frequent, lyrics are opened by hand. */
+	private static final int TRACK_RATE = ApiApp.CONFIG.musixMatchRate(); // requests a second
+	private static final QuotaGuard TRACK_GUARD = new QuotaGuard("track.search",
+			new RateLimiter(TRACK_RATE, TRACK_RATE), new CircuitBreaker(5, Duration.ofSeconds(30)), 2);
+	private static final QuotaGuard LYRICS_GUARD = new QuotaGuard("matcher.lyrics.get", new RateLimiter(2, 4),
+			new CircuitBreaker(5, Duration.ofSeconds(30)), 2);
+	/** The endpoints as the client core sends them; musixmatch puts the real status in the body. */
+	private static final ClientCore.Endpoint TRACK_SEARCH = ClientCore.endpoint("musixmatch.track.search")
+			.guard(TRACK_GUARD).ttl(TRACK_TTL).missingTtl(MISSING_TTL).status(QuotaGuard::effectiveStatus).build();
+	private static final ClientCore.Endpoint LYRICS = ClientCore.endpoint("musixmatch.matcher.lyrics.get")
+			.guard(LYRICS_GUARD).ttl(LYRICS_TTL).missingTtl(MISSING_TTL).status(QuotaGuard::effectiveStatus)
+			.accept(200, 404).build();
+	private static final Duration ALERT_INTERVAL = Duration.ofSeconds(30);
+	private static final AtomicLong lastAlert = new AtomicLong(Long.MIN_VALUE / 2);
+	/** Cache keys known to have no result, mapped to when that stops being trusted. */
+	private static final Map<String, Long> MISSING = new ConcurrentHashMap<String, Long>();
+	private static final Log LOG = Log.get(MusixMatchApi.class);
+
+	/** Prebuilt requests holding the api key, rebuilt when the config file changes. */
+	private static volatile RequestTemplate trackTemplate;
+	private static volatile RequestTemplate lyricsTemplate;
+	private static volatile RequestTemplate searchTemplate;
+
+	static {
+		buildTemplates();
+		ApiApp.CONFIG.addListener(MusixMatchApi::buildTemplates);
+		Metrics.gauge("musixmatch.knownMissing", MISSING::size);
+	}
+
+	@Override
+	public String name() {
+		return "musixmatch";
+	}
+
+	@Override
+	public String titleOf(Track result) {
+		return result.track_name;
+	}
+
+	@Override
+	public String creatorOf(Track result) {
+		return result.artist_name;
+	}
+
+	/**
+	 * Searches tracks by any words of their name, artist or lyrics, best rated
+	 * first.
+	 *
+	 * @param query
+	 * @param limit
+	 * @return CompletableFuture<List<Track>>
+	 */
+	@Override
+	public CompletableFuture<List<Track>> searchAsync(String query, int limit) {
+		String cacheKey = ResponseCache.key(TRACK_SEARCH_ENDPOINT, "q", query, "page_size", String.valueOf(limit));
+		HttpRequest request = searchTemplate.request(null, query, String.valueOf(limit));
+		return ApiApp.CLIENT_CORE.get(TRACK_SEARCH, cacheKey, request, this::parseTracks)
+				.thenApply(tracks -> tracks == null ? new ArrayList<Track>() : tracks);
+	}
 
 	/**
-	 * this method track name and artist name as input and uses it to query on musix
-	 * match track search API
+	 * Looks up the musixmatch track of a track and artist pair. Concurrent lookups
+	 * of the same normalized pair share one request and its parsed result. Found
+	 * tracks are kept in the response cache, and pairs musixmatch does not know
+	 * are remembered for a short while so they are not asked about again
+	 * straight away. The future holds {@code null} when the track was not found,
+	 * and fails with a {@link ClientCore.StatusException} when musixmatch refused
+	 * the request, or with the cause when it could not be reached.
 	 * 
 	 * @param track
 	 * @param artist
-	 * @return HttpResponse<String>
+	 * @param timeout per request timeout, or {@code null} for none
+	 * @return CompletableFuture<Track>
 	 */
-	HttpResponse<String> getTrackApiResponse(String track, String artist) {
-
-		System.out.println("Going to search on musix : " + track + "::" + artist);
-		String q_track = URLEncoder.encode(track, StandardCharsets.UTF_8); // encoding searched text
-		String q_artist = URLEncoder.encode(artist, StandardCharsets.UTF_8); // encoding limit value
-		String sort = URLEncoder.encode("desc", StandardCharsets.UTF_8);
-		String query = String.format("q_track=%s&q_artist=%s&s_track_rating=%s&page_size=1&page=1&apikey=%s", q_track,
-				q_artist, sort, getKey()); // creating a
-		// query for API
-		HttpResponse<String> response;
-		try {
-			HttpRequest request = HttpRequest.newBuilder().uri(URI.create(TRACK_SEARCH_ENDPOINT + query)).build();
-			System.out.println(request.toString());
-			response = ApiApp.HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-			// System.out.println(response.body());
-		} catch (Exception e) {
-			System.out.println("Inside exception of musix api request");
-			response = null;
-			System.out.println(e.toString());
-			ApiApp.showAlert("Error", "Error", e.toString());
+	CompletableFuture<Track> getTrackAsync(String track, String artist, Duration timeout) {
+		String cacheKey = trackCacheKey(track, artist);
+		if (isKnownMissing(cacheKey)) {
+			return CompletableFuture.completedFuture(null);
 		}
-
-		return response;
+		HttpRequest request = trackTemplate.request(timeout, track, artist);
+		return ApiApp.CLIENT_CORE.get(TRACK_SEARCH, cacheKey, request, this::parseTrack).handle((found, error) -> {
+			if (error != null) { // failed, but not known to be missing
+				throw error instanceof CompletionException ? (CompletionException) error
+						: new CompletionException(error);
+			}
+			if (found == null) {
+				rememberMissing(cacheKey);
+				return null;
+			}
+			ApiApp.TRACK_INDEX.addTrack(track, artist, found);
+			return found;
+		});
 	}
 
 	/**
-	 * this method accpets track name and artists name as it is from musixmatch
-	 * track and provides the lyrics
+	 * Returns the lyrics of a track, or "Not Available". Concurrent requests for
+	 * the same normalized pair, such as repeated clicks on "See Lyrics", share one
+	 * request. Found lyrics are kept in the response cache and missing ones are
+	 * remembered for a short while.
 	 * 
 	 * @param track
 	 * @param artist
-	 * @return HttpResponse<String>
+	 * @return String (lyrics)
 	 */
-	HttpResponse<String> getLyricsApiResponse(String track, String artist) {
-
-		System.out.println("Going to search lyrics on musix : " + track + "::" + artist);
-		String q_track = URLEncoder.encode(track, StandardCharsets.UTF_8); // encoding searched text
-		String q_artist = URLEncoder.encode(artist, StandardCharsets.UTF_8); // encoding limit value
-		String sort = URLEncoder.encode("desc", StandardCharsets.UTF_8);
-		String query = String.format("q_track=%s&q_artist=%s&apikey=%s", q_track, q_artist, getKey()); // creating a
-																										// query for API
-		HttpResponse<String> response;
+	String fetchLyrics(String track, String artist) {
+		String cacheKey = ResponseCache.key(LYRICS_ENDPOINT, "q_track", track, "q_artist", artist);
+		if (isKnownMissing(cacheKey)) {
+			return NOT_AVAILABLE;
+		}
+		LOG.debug("matcher.lyrics.get %s :: %s", track, artist);
+		HttpRequest request = lyricsTemplate.request(null, track, artist);
 		try {
-			HttpRequest request = HttpRequest.newBuilder().uri(URI.create(LYRICS_ENDPOINT + query)).build();
-			System.out.println(request.toString());
-			response = ApiApp.HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-			// System.out.println(response.body());
-		} catch (Exception e) {
-			System.out.println("Inside exception of musix api request");
-			response = null;
-			System.out.println(e.toString());
+			String lyrics = ApiApp.CLIENT_CORE.get(LYRICS, cacheKey, request, body -> {
+				String found = parseLyrics(body);
+				return NOT_AVAILABLE.equals(found) ? null : found; // cached for MISSING_TTL only
+			}).join();
+			if (lyrics == null) {
+				rememberMissing(cacheKey);
+				return NOT_AVAILABLE;
+			}
+			return lyrics;
+		} catch (CompletionException e) {
+			if (!(unwrap(e) instanceof ClientCore.StatusException)) { // throttled or failed, ask again later
+				reportFailure(unwrap(e));
+			}
+			return NOT_AVAILABLE;
+		}
+	}
+
+	/**
+	 * Reports a failed request. An open circuit is expected while musixmatch is
+	 * throttling us, so it is only logged, and other errors raise at most one
+	 * alert every {@code ALERT_INTERVAL} instead of one per track.
+	 */
+	private static void reportFailure(Throwable e) {
+		if (e instanceof QuotaGuard.RejectedException) {
+			LOG.debug(e.toString());
+			return;
+		}
+		LOG.warn("musixmatch request failed: %s", e.toString());
+		long now = System.currentTimeMillis();
+		long last = lastAlert.get();
+		if (now - last >= ALERT_INTERVAL.toMillis() && lastAlert.compareAndSet(last, now)) {
 			ApiApp.showAlert("Error", "Error", e.toString());
 		}
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+	}
+
+	private static String trackCacheKey(String track, String artist) {
+		return ResponseCache.key(TRACK_SEARCH_ENDPOINT, "q_track", track, "q_artist", artist);
+	}
+
+	private static boolean isKnownMissing(String cacheKey) {
+		Long until = MISSING.get(cacheKey);
+		if (until == null) {
+			return false;
+		}
+		if (until < System.currentTimeMillis()) {
+			MISSING.remove(cacheKey, until);
+			return false;
+		}
+		return true;
+	}
+
+	private static void rememberMissing(String cacheKey) {
+		MISSING.put(cacheKey, System.currentTimeMillis() + MISSING_TTL.toMillis());
+	}
 
-		return response;
+	private static void buildTemplates() {
+		String key = ApiApp.CONFIG.musixMatchKey();
+		if (key.isEmpty()) {
+			LOG.error("No musixmatch api key, set musixapi.key in resources/config.properties");
+		}
+		trackTemplate = RequestTemplate.builder(TRACK_SEARCH_ENDPOINT).param("q_track").param("q_artist")
+				.fixed("s_track_rating", "desc").fixed("page_size", "1").fixed("page", "1").fixed("apikey", key)
+				.build();
+		lyricsTemplate = RequestTemplate.builder(LYRICS_ENDPOINT).param("q_track").param("q_artist")
+				.fixed("apikey", key).build();
+		searchTemplate = RequestTemplate.builder(TRACK_SEARCH_ENDPOINT).param("q").param("page_size")
+				.fixed("s_track_rating", "desc").fixed("page", "1").fixed("apikey", key).build();
 	}
 
 	/**
@@ -165,21 +294,40 @@ public class MusixMatchApi {
 	 * 
 	 * @param response
 	 * @return Track
+	 * @throws IOException if the body cannot be read
+	 */
+	Track getRating(HttpResponse<String> response) throws IOException {
+		return parseTrack(response.body());
+	}
+
+	/**
+	 * Returns the first track of a track search body, or {@code null}.
 	 */
-	Track getRating(HttpResponse<String> response) {
-		System.out.println("Inside getRating method now..");
+	private Track parseTrack(String body) throws IOException {
+		List<Track> tracks = parseTracks(body);
+		return tracks == null || tracks.isEmpty() ? null : tracks.get(0);
+	}
+
+	/**
+	 * Returns the tracks of a track search body, or {@code null} if it holds
+	 * none. A body that cannot be read throws, so a garbled answer fails the
+	 * call instead of passing, and being cached, as a track musixmatch does not
+	 * know.
+	 */
+	private List<Track> parseTracks(String body) throws IOException {
 		try {
-			TrackResponseApi res = ApiApp.GSON.fromJson(response.body(), TrackResponseApi.class);
-			System.out.println("Size ------>" + res.message.body.track_list.size());
-			System.out.println("====> " + response.body().toString());
-			if (res.message.body.track_list.size() == 0)
+			TrackResponseApi res = ApiApp.GSON.fromJson(body, TrackResponseApi.class);
+			LOG.debug("track.search returned %s tracks", res.message.body.track_list.size());
+			if (res.message.body.track_list.size() == 0) {
 				return null;
-			else
-				return res.message.body.track_list.get(0).track;
-		} catch (Exception e) {
-			System.out.println("Could not find the track");
-			e.printStackTrace();
-			return null;
+			}
+			List<Track> tracks = new ArrayList<Track>(res.message.body.track_list.size());
+			for (TrackItem item : res.message.body.track_list) {
+				tracks.add(item.track);
+			}
+			return tracks;
+		} catch (RuntimeException e) {
+			throw new IOException("track search response unreadable", e);
 		}
 	}
 
@@ -191,43 +339,21 @@ public class MusixMatchApi {
 	 * @return String (lyrics)
 	 */
 	String getLyrics(HttpResponse<String> response) {
-		System.out.println("Inside getLyrics method now..");
+		return parseLyrics(response.body());
+	}
+
+	private String parseLyrics(String body) {
 		try {
-			LyricsResponseApi res = ApiApp.GSON.fromJson(response.body(), LyricsResponseApi.class);
+			LyricsResponseApi res = ApiApp.GSON.fromJson(body, LyricsResponseApi.class);
 			if (res.message.header.status_code != 200) {
-				return "Not Available";
+				return NOT_AVAILABLE;
 			} else {
 				return res.message.body.lyrics.lyrics_body;
 			}
 		} catch (Exception e) {
-			System.out.println("Could not find the lyrics");
-			e.printStackTrace();
-			return "Not Available";
+			LOG.warn("Could not read the lyrics response: %s", e.toString());
+			return NOT_AVAILABLE;
 		}
 
 	}
-
-	/**
-	 * this method reads the config.properties file and extracts the musixmatch api
-	 * key.
-	 * 
-	 * @return apikey
-	 */
-	private String getKey() {
-
-		String configPath = "resources/config.properties";
-		try (FileInputStream configFileStream = new FileInputStream(configPath)) {
-			Properties config = new Properties();
-			config.load(configFileStream);
-			// config.list(System.out); // list all using standard out
-			String musixApiKey = config.getProperty("musixapi.key"); // get musixAPi.key
-			return musixApiKey;
-		} catch (IOException ioe) {
-			System.err.println(ioe);
-			ioe.printStackTrace();
-			ApiApp.showAlert("Error", "Error", ioe.toString());
-			return "";
-		} // try
-
-	}
 }
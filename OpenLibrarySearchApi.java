@@ -1,22 +1,21 @@
 package cs1302.api;
 
-import java.io.IOException;
-import java.net.URI;
-import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
-import java.net.http.HttpRequest;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
-
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Example using Open Library Search API.
  *
  * <p>
+ * The search is a {@link SearchProvider}, so requests go through the shared
+ * {@link ClientCore} and its client, cache, retries and metrics.
+ *
+ * <p>
  * To run this example on Odin, use the following commands:
  *
  * <pre>
@@ -24,14 +23,16 @@ import com.google.gson.GsonBuilder;
  * $ mvn exec:java -Dexec.mainClass=cs1302.api.OpenLibrarySearchApi
  * </pre>
  */
-public class OpenLibrarySearchApi {
+public class OpenLibrarySearchApi implements SearchProvider<OpenLibrarySearchApi.OpenLibraryDoc> {
 
     /**
      * Represents an Open Library Search API document.
      */
-    private static class OpenLibraryDoc {
+    static class OpenLibraryDoc {
         String type;
         String title;
+        String[] author_name;
+        int first_publish_year;
     } // OpenLibraryDoc
 
     /**
@@ -42,23 +43,22 @@ public class OpenLibrarySearchApi {
         OpenLibraryDoc[] docs;
     } // OpenLibraryResult
 
-    /** HTTP client. */
-    public static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
-        .version(HttpClient.Version.HTTP_2)           // uses HTTP protocol version 2 where possible
-        .followRedirects(HttpClient.Redirect.NORMAL)  // always redirects, except from HTTPS to HTTP
-        .build();                                     // builds and returns a HttpClient object
-
-    /** Google {@code Gson} object for parsing JSON-formatted strings. */
-    public static Gson GSON = new GsonBuilder()
-        .setPrettyPrinting()                          // enable nice output when printing
-        .create();                                    // builds and returns a Gson object
-
-    private static final String ENDPOINT = "https://openlibrary.org/search.json";
+    private static final String ENDPOINT = ApiApp.CONFIG.openLibraryUrl();
+    /** Only the fields read here are asked for; a full document is many times the size. */
+    private static final String FIELDS = "type,title,author_name,first_publish_year";
+    private static final RequestTemplate SEARCH_TEMPLATE = RequestTemplate.builder(ENDPOINT)
+        .param("q").param("limit").fixed("fields", FIELDS).build();
+    private static final ClientCore.Endpoint SEARCH = ClientCore.endpoint("openlibrary.search")
+        .ttl(Duration.ofHours(6))                     // the catalog changes slowly
+        .timeout(Duration.ofSeconds(20))              // search.json can be slow for broad queries
+        .build();
+    private static final int DEFAULT_LIMIT = 100;     // what the API returns without a limit
 
     public static void main(String[] args) {
         OpenLibrarySearchApi
             .search("the lord of the rings")
             .ifPresent(response -> example1(response));
+        Log.flush();
     } // main
 
     /**
@@ -83,37 +83,47 @@ public class OpenLibrarySearchApi {
         System.out.printf("Searching for: %s\n", q);
         System.out.println("This may take some time to download...");
         try {
-            String url =  String.format(
-                "%s?q=%s",
-                OpenLibrarySearchApi.ENDPOINT,
-                URLEncoder.encode(q, StandardCharsets.UTF_8));
-            String json = OpenLibrarySearchApi.fetchString(url);
-            OpenLibraryResult result = GSON.fromJson(json, OpenLibraryResult.class);
-            return Optional.<OpenLibraryResult>ofNullable(result);
-        } catch (IllegalArgumentException | IOException | InterruptedException e) {
+            return Optional.<OpenLibraryResult>ofNullable(fetch(q, DEFAULT_LIMIT).join());
+        } catch (CompletionException e) {
             return Optional.<OpenLibraryResult>empty();
         } // try
     } // search
 
+    @Override
+    public String name() {
+        return "openlibrary";
+    } // name
+
+    @Override
+    public String titleOf(OpenLibraryDoc doc) {
+        return doc.title;
+    } // titleOf
+
+    @Override
+    public String creatorOf(OpenLibraryDoc doc) {
+        return doc.author_name == null || doc.author_name.length == 0 ? null : doc.author_name[0];
+    } // creatorOf
+
+    @Override
+    public CompletableFuture<List<OpenLibraryDoc>> searchAsync(String query, int limit) {
+        return fetch(query, limit).thenApply(result -> result == null || result.docs == null
+            ? new ArrayList<OpenLibraryDoc>()
+            : Arrays.asList(result.docs));
+    } // searchAsync
+
     /**
-     * Returns the response body string data from a URI.
-     * @param uri location of desired content
-     * @return response body string
-     * @throws IOException if an I/O error occurs when sending or receiving
-     * @throws InterruptedException if the HTTP client's {@code send} method is
-     *    interrupted
+     * Returns the root element of the response for a "search" query.
+     * @param q query string
+     * @param limit most documents returned
+     * @return the response, once it has arrived
      */
-    private static String fetchString(String uri) throws IOException, InterruptedException {
-        HttpRequest request = HttpRequest.newBuilder()
-            .uri(URI.create(uri))
-            .build();
-        HttpResponse<String> response = HTTP_CLIENT
-            .send(request, BodyHandlers.ofString());
-        final int statusCode = response.statusCode();
-        if (statusCode != 200) {
-            throw new IOException("response status code not 200:" + statusCode);
-        } // if
-        return response.body().trim();
-    } // fetchString
+    private static CompletableFuture<OpenLibraryResult> fetch(String q, int limit) {
+        String value = String.valueOf(limit);
+        return ApiApp.CLIENT_CORE.get(
+            SEARCH,
+            ResponseCache.key(ENDPOINT, "q", q, "limit", value, "fields", FIELDS),
+            SEARCH_TEMPLATE.request(null, q, value),
+            ClientCore.json(OpenLibraryResult.class));
+    } // fetch
 
 } // OpenLibrarySearchApi
@@ -0,0 +1,84 @@
+package cs1302.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @author Shivam Mishra
+ * Exclusive lock on a file, held by one process at a time, for on disk stores
+ * that only one process may write. The process that gets it owns the store;
+ * any other, such as a second app or a {@link BatchEnricher} started on the
+ * same {@code cache/}, may read what is already there but must not truncate or
+ * append to it. The lock goes away with the process, so a crash never leaves a
+ * store locked.
+ */
+final class ProcessLock implements AutoCloseable {
+
+	/** Paths locked by this JVM; opening a second channel on one and closing it could drop the lock. */
+	private static final Set<String> HELD = new HashSet<String>();
+
+	private final String path;
+	private final FileChannel channel;
+	private final FileLock lock;
+
+	private ProcessLock(String path, FileChannel channel, FileLock lock) {
+		this.path = path;
+		this.channel = channel;
+		this.lock = lock;
+	}
+
+	/**
+	 * Takes the lock on {@code file}, creating it if needed, without waiting.
+	 *
+	 * @param file
+	 * @return ProcessLock, or {@code null} if another process, or another store
+	 *         of this one, holds it
+	 * @throws IOException if the file cannot be created or locked
+	 */
+	static ProcessLock tryAcquire(File file) throws IOException {
+		String path = file.getCanonicalPath();
+		synchronized (HELD) {
+			if (HELD.contains(path)) {
+				return null;
+			}
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE);
+			try {
+				FileLock lock = channel.tryLock();
+				if (lock != null) {
+					HELD.add(path);
+					return new ProcessLock(path, channel, lock);
+				}
+			} catch (OverlappingFileLockException e) {
+				// held elsewhere in this JVM
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+			channel.close();
+			return null;
+		}
+	}
+
+	/**
+	 * Releases the lock.
+	 */
+	@Override
+	public void close() {
+		synchronized (HELD) {
+			try {
+				lock.release();
+				channel.close();
+			} catch (IOException ioe) {
+				// the lock goes with the channel anyway
+			}
+			HELD.remove(path);
+		}
+	}
+}
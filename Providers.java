@@ -0,0 +1,48 @@
+package cs1302.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Shivam Mishra
+ * Registry of the {@link SearchProvider}s the app can search, by name. The
+ * built in ones are registered by {@link ApiApp}; others can be added at any
+ * time.
+ */
+public final class Providers {
+
+	private static final Map<String, SearchProvider<?>> PROVIDERS = new ConcurrentHashMap<String, SearchProvider<?>>();
+
+	private Providers() {
+	}
+
+	/**
+	 * Registers a provider, replacing any of the same name.
+	 *
+	 * @param provider
+	 */
+	public static void register(SearchProvider<?> provider) {
+		PROVIDERS.put(provider.name(), provider);
+	}
+
+	/**
+	 * Returns the provider registered under {@code name}, or {@code null}.
+	 *
+	 * @param name
+	 * @return SearchProvider<?>
+	 */
+	public static SearchProvider<?> get(String name) {
+		return PROVIDERS.get(name);
+	}
+
+	/**
+	 * Returns every registered provider.
+	 *
+	 * @return List<SearchProvider<?>>
+	 */
+	public static List<SearchProvider<?>> all() {
+		return new ArrayList<SearchProvider<?>>(PROVIDERS.values());
+	}
+}
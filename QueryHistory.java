@@ -0,0 +1,157 @@
+package cs1302.api;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author Shivam Mishra
+ * Queries searched before, with how often and how recently, used to guess what
+ * a partly typed query will become. Kept in memory and saved as one
+ * {@code count<TAB>lastUsed<TAB>query} line per query; only the
+ * {@code MAX_QUERIES} most used are kept.
+ */
+public class QueryHistory {
+
+	private static final int MAX_QUERIES = 500;
+	private static final Log LOG = Log.get(QueryHistory.class);
+
+	/** Usage of one query. */
+	private static class Usage {
+		int count;
+		long lastUsed;
+
+		Usage(int count, long lastUsed) {
+			this.count = count;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	private static final Comparator<Map.Entry<String, Usage>> MOST_USED = (a, b) -> {
+		if (a.getValue().count != b.getValue().count) {
+			return Integer.compare(b.getValue().count, a.getValue().count);
+		}
+		return Long.compare(b.getValue().lastUsed, a.getValue().lastUsed);
+	};
+
+	private final File file;
+	private final TreeMap<String, Usage> queries = new TreeMap<String, Usage>();
+
+	/**
+	 * Constructs a {@code QueryHistory} and loads {@code file} if it exists.
+	 *
+	 * @param file
+	 */
+	public QueryHistory(File file) {
+		this.file = file;
+		load();
+	}
+
+	/**
+	 * Counts one search of {@code query}.
+	 *
+	 * @param query
+	 */
+	public synchronized void record(String query) {
+		String normalized = normalize(query);
+		if (normalized.isEmpty()) {
+			return;
+		}
+		Usage usage = queries.computeIfAbsent(normalized, k -> new Usage(0, 0));
+		usage.count++;
+		usage.lastUsed = System.currentTimeMillis();
+		if (queries.size() > MAX_QUERIES) {
+			queries.entrySet().stream().max(MOST_USED).ifPresent(least -> queries.remove(least.getKey()));
+		}
+	}
+
+	/**
+	 * Returns the queries starting with {@code prefix} that were searched at
+	 * least {@code minCount} times, most used first. The prefix itself is left
+	 * out.
+	 *
+	 * @param prefix
+	 * @param minCount
+	 * @param limit
+	 * @return List<String>
+	 */
+	public synchronized List<String> completions(String prefix, int minCount, int limit) {
+		String normalized = normalize(prefix);
+		List<Map.Entry<String, Usage>> matches = new ArrayList<Map.Entry<String, Usage>>();
+		if (normalized.isEmpty()) {
+			return new ArrayList<String>();
+		}
+		for (Map.Entry<String, Usage> entry : queries.subMap(normalized, false, normalized + Character.MAX_VALUE,
+				false).entrySet()) {
+			if (entry.getValue().count >= minCount) {
+				matches.add(entry);
+			}
+		}
+		matches.sort(MOST_USED);
+		List<String> completions = new ArrayList<String>();
+		for (int i = 0; i < matches.size() && i < limit; i++) {
+			completions.add(matches.get(i).getKey());
+		}
+		return completions;
+	}
+
+	/**
+	 * Writes the history to its file, replacing it atomically.
+	 */
+	public synchronized void save() {
+		File tmp = new File(file.getPath() + ".tmp");
+		try {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				parent.mkdirs();
+			}
+			try (Writer out = new FileWriter(tmp, StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, Usage> entry : queries.entrySet()) {
+					out.write(entry.getValue().count + "\t" + entry.getValue().lastUsed + "\t" + entry.getKey() + "\n");
+				}
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOG.warn("Could not save query history: %s", e.toString());
+			tmp.delete();
+		}
+	}
+
+	private void load() {
+		if (!file.isFile()) {
+			return;
+		}
+		try (BufferedReader in = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t", 3);
+				if (fields.length == 3) {
+					try {
+						queries.put(fields[2], new Usage(Integer.parseInt(fields[0]), Long.parseLong(fields[1])));
+					} catch (NumberFormatException e) {
+						LOG.debug("Skipping history line %s", line);
+					}
+				}
+			}
+		} catch (IOException e) {
+			LOG.warn("Could not read query history: %s", e.toString());
+		}
+	}
+
+	private static String normalize(String query) {
+		return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+	}
+}
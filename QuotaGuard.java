@@ -0,0 +1,248 @@
+package cs1302.api;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * @author Shivam Mishra
+ * Sends the requests of one musixmatch endpoint within the API key's quota. Each
+ * request takes a permit from a {@link RateLimiter}, throttled responses (HTTP
+ * 429 or 503, or musixmatch's own 402 "usage limit reached" inside a 200 body)
+ * slow the limiter down and honour {@code Retry-After}, and failed requests are
+ * retried with jittered exponential backoff. A {@link CircuitBreaker} refuses
+ * requests while the endpoint keeps failing, so callers can show "N/A" at once
+ * instead of piling up errors.
+ */
+public class QuotaGuard {
+
+	/**
+	 * Thrown through the returned future when a request is refused because the
+	 * circuit is open.
+	 */
+	public static class RejectedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public RejectedException(String message) {
+			super(message);
+		}
+	}
+
+	private static final long BASE_BACKOFF_MILLIS = 250;
+	private static final long MAX_BACKOFF_MILLIS = 8_000;
+	private static final long QUOTA_PAUSE_MILLIS = 60_000; // musixmatch does not say when the quota frees up
+
+	private final String name;
+	private final RateLimiter limiter;
+	private final CircuitBreaker breaker;
+	private final int maxRetries;
+	private final Metrics.Endpoint metrics;
+	private static final Log LOG = Log.get(QuotaGuard.class);
+
+	/**
+	 * Constructs a {@code QuotaGuard}.
+	 *
+	 * @param name       endpoint name used in messages
+	 * @param limiter    limiter the requests take their permits from
+	 * @param breaker    breaker guarding the endpoint
+	 * @param maxRetries retries after the first attempt
+	 */
+	public QuotaGuard(String name, RateLimiter limiter, CircuitBreaker breaker, int maxRetries) {
+		this.name = name;
+		this.limiter = limiter;
+		this.breaker = breaker;
+		this.maxRetries = maxRetries;
+		this.metrics = Metrics.endpoint("musixmatch." + name);
+		Metrics.gauge("musixmatch." + name + ".rate", limiter::getRate);
+		Metrics.gauge("musixmatch." + name + ".circuit", () -> breaker.getState().ordinal()); // 0 closed, 1 open
+	}
+
+	/**
+	 * Sends a request asynchronously. The future completes with the last response
+	 * received, which may still be a throttled one once the retries are used up,
+	 * or exceptionally if no response could be received at all.
+	 *
+	 * @param request
+	 * @return CompletableFuture<HttpResponse<String>>
+	 */
+	public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request) {
+		return attempt(request, 0);
+	}
+
+	/**
+	 * Blocking variant of {@link #sendAsync(HttpRequest)}.
+	 *
+	 * @param request
+	 * @return HttpResponse<String>
+	 * @throws IOException          if no response could be received
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+		try {
+			return sendAsync(request).get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	public CircuitBreaker.State getState() {
+		return breaker.getState();
+	}
+
+	private CompletableFuture<HttpResponse<String>> attempt(HttpRequest request, int attempt) {
+		if (!breaker.allowRequest()) {
+			return CompletableFuture.failedFuture(new RejectedException(name + " is unavailable, circuit open"));
+		}
+		long wait = limiter.reserve();
+		return CompletableFuture.runAsync(() -> {
+		}, after(wait)).thenCompose(ignored -> {
+			long start = System.nanoTime();
+			return ApiApp.HTTP_CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+					.whenComplete((response, error) -> metrics.record(start, response, error));
+		}).handle((response, error) -> {
+					if (error != null) {
+						breaker.recordFailure();
+						return retryOrFail(request, attempt, backoff(attempt), error);
+					}
+					int status = effectiveStatus(response);
+					if (status == 402) {
+						// daily quota used up, retrying now would only waste the next window
+						limiter.onThrottled(TimeUnit.MILLISECONDS.toNanos(QUOTA_PAUSE_MILLIS));
+						breaker.recordFailure();
+						LOG.warn("%s quota used up, pausing %s ms", name, QUOTA_PAUSE_MILLIS);
+						return CompletableFuture.completedFuture(response);
+					}
+					if (status == 429 || status == 503) {
+						long pause = retryAfter(response).orElse(backoff(attempt));
+						limiter.onThrottled(TimeUnit.MILLISECONDS.toNanos(pause));
+						breaker.recordFailure();
+						LOG.warn("%s throttled (%s), pausing %s ms", name, status, pause);
+						return retryOrReturn(request, attempt, pause, response);
+					}
+					if (status == 401) {
+						breaker.recordFailure(); // bad api key, retrying will not help
+						return CompletableFuture.completedFuture(response);
+					}
+					if (status >= 500) {
+						breaker.recordFailure();
+						return retryOrReturn(request, attempt, backoff(attempt), response);
+					}
+					breaker.recordSuccess();
+					limiter.onSuccess();
+					return CompletableFuture.completedFuture(response);
+				}).thenCompose(next -> next);
+	}
+
+	private CompletableFuture<HttpResponse<String>> retryOrReturn(HttpRequest request, int attempt, long delayMillis,
+			HttpResponse<String> response) {
+		if (attempt >= maxRetries) {
+			return CompletableFuture.completedFuture(response);
+		}
+		return CompletableFuture.runAsync(() -> {
+		}, after(TimeUnit.MILLISECONDS.toNanos(delayMillis))).thenCompose(ignored -> attempt(request, attempt + 1));
+	}
+
+	private CompletableFuture<HttpResponse<String>> retryOrFail(HttpRequest request, int attempt, long delayMillis,
+			Throwable error) {
+		if (attempt >= maxRetries) {
+			return CompletableFuture.failedFuture(error);
+		}
+		return CompletableFuture.runAsync(() -> {
+		}, after(TimeUnit.MILLISECONDS.toNanos(delayMillis))).thenCompose(ignored -> attempt(request, attempt + 1));
+	}
+
+	private static Executor after(long nanos) {
+		return nanos <= 0 ? Runnable::run : CompletableFuture.delayedExecutor(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns a "full jitter" backoff: a random delay up to an exponentially
+	 * growing cap, so that retries of many requests do not arrive together.
+	 */
+	static long backoff(int attempt) {
+		long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+		return ThreadLocalRandom.current().nextLong(BASE_BACKOFF_MILLIS / 2, cap + 1);
+	}
+
+	/**
+	 * Parses the {@code Retry-After} header, given either in seconds or as an
+	 * HTTP date.
+	 */
+	private static Optional<Long> retryAfter(HttpResponse<String> response) {
+		Optional<String> header = response.headers().firstValue("Retry-After");
+		if (header.isEmpty()) {
+			return Optional.empty();
+		}
+		String value = header.get().trim();
+		try {
+			return Optional.of(Math.max(0, Long.parseLong(value) * 1000));
+		} catch (NumberFormatException notSeconds) {
+			try {
+				ZonedDateTime when = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+				return Optional.of(Math.max(0, Duration.between(ZonedDateTime.now(), when).toMillis()));
+			} catch (RuntimeException notDate) {
+				return Optional.empty();
+			}
+		}
+	}
+
+	/**
+	 * Returns the status of a response. Musixmatch answers most errors with HTTP
+	 * 200 and the real code in {@code message.header.status_code}, so for 200
+	 * responses only the start of the body is read to find it.
+	 */
+	static int effectiveStatus(HttpResponse<String> response) {
+		int status = response.statusCode();
+		if (status != 200 || response.body() == null) {
+			return status;
+		}
+		try (JsonReader reader = new JsonReader(new StringReader(response.body()))) {
+			if (enter(reader, "message") && enter(reader, "header") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					if (reader.nextName().equals("status_code") && reader.peek() == JsonToken.NUMBER) {
+						return reader.nextInt();
+					}
+					reader.skipValue();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// not the usual envelope, trust the HTTP status
+		}
+		return status;
+	}
+
+	/**
+	 * Steps into the object value of {@code field}, skipping the fields before it.
+	 */
+	private static boolean enter(JsonReader reader, String field) throws IOException {
+		if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+			return false;
+		}
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (reader.nextName().equals(field)) {
+				return true;
+			}
+			reader.skipValue();
+		}
+		return false;
+	}
+}
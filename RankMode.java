@@ -0,0 +1,44 @@
+package cs1302.api;
+
+import java.util.Comparator;
+
+/**
+ * @author Shivam Mishra
+ * Orders the track list can be shown in. Each is a comparator over
+ * {@link TrackRow}s, ending in the order the rows were found so equal rows
+ * keep their place; the list re-ranks a row when its rating lands.
+ */
+public enum RankMode {
+
+	/** The order the sources returned the tracks in. */
+	RELEVANCE("Relevance", Comparator.comparingInt(TrackRow::getArrival)),
+
+	/** Best rated first, tracks without a rating yet last. */
+	RATING("Top rated", Comparator.comparingInt(TrackRow::getRating).reversed()
+			.thenComparingInt(TrackRow::getArrival)),
+
+	/** Newest first, tracks without a date last. */
+	RELEASE_DATE("Newest", Comparator.comparingInt(TrackRow::getReleaseDay).reversed()
+			.thenComparingInt(TrackRow::getArrival)),
+
+	/** By artist name, A to Z. */
+	ARTIST("Artist", Comparator.comparing((TrackRow row) -> row.getResult().artistName,
+			Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)).thenComparingInt(TrackRow::getArrival));
+
+	private final String label;
+	private final Comparator<TrackRow> order;
+
+	RankMode(String label, Comparator<TrackRow> order) {
+		this.label = label;
+		this.order = order;
+	}
+
+	public Comparator<TrackRow> comparator() {
+		return order;
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+}
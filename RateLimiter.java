@@ -0,0 +1,90 @@
+package cs1302.api;
+
+/**
+ * @author Shivam Mishra
+ * Token bucket rate limiter that adapts to the server. Callers reserve a permit
+ * and are told how long to wait before using it, so nothing blocks a thread
+ * while waiting. When the server pushes back the rate is halved and the bucket
+ * is paused for the time the server asked for; each success then raises the rate
+ * a little until it is back at the configured maximum.
+ */
+public class RateLimiter {
+
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+	private final double maxRate;
+	private final double minRate;
+	private final double burst;
+	private double rate;
+	private double tokens;
+	private long lastRefill;
+	private long pausedUntil;
+
+	/**
+	 * Constructs a {@code RateLimiter} that starts full.
+	 *
+	 * @param permitsPerSecond maximum sustained rate
+	 * @param burst            number of permits that can be used back to back
+	 */
+	public RateLimiter(double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("rate and burst must be positive");
+		}
+		this.maxRate = permitsPerSecond;
+		this.minRate = permitsPerSecond / 16;
+		this.burst = burst;
+		this.rate = permitsPerSecond;
+		this.tokens = burst;
+		this.lastRefill = System.nanoTime();
+		this.pausedUntil = lastRefill;
+	}
+
+	/**
+	 * Takes one permit and returns how long the caller must wait before using it.
+	 *
+	 * @return delay in nanoseconds, 0 if the permit can be used right away
+	 */
+	public synchronized long reserve() {
+		long now = System.nanoTime();
+		refill(now);
+		tokens -= 1;
+		long wait = tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS_PER_SECOND);
+		return Math.max(wait, pausedUntil - now);
+	}
+
+	/**
+	 * Records that the server accepted a request, raising the rate by a small step.
+	 */
+	public synchronized void onSuccess() {
+		refill(System.nanoTime());
+		rate = Math.min(maxRate, rate + maxRate / 20);
+	}
+
+	/**
+	 * Records that the server throttled a request. The rate is halved and no
+	 * permit is handed out before {@code pauseNanos} from now.
+	 *
+	 * @param pauseNanos how long the server asked us to stay away
+	 */
+	public synchronized void onThrottled(long pauseNanos) {
+		long now = System.nanoTime();
+		refill(now);
+		rate = Math.max(minRate, rate / 2);
+		tokens = Math.min(tokens, 0);
+		pausedUntil = Math.max(pausedUntil, now + pauseNanos);
+	}
+
+	/**
+	 * Returns the current permitted rate.
+	 *
+	 * @return permits per second
+	 */
+	public synchronized double getRate() {
+		return rate;
+	}
+
+	private void refill(long now) {
+		tokens = Math.min(burst, tokens + (now - lastRefill) * rate / NANOS_PER_SECOND);
+		lastRefill = now;
+	}
+}
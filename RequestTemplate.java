@@ -0,0 +1,136 @@
+package cs1302.api;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Shivam Mishra
+ * Precompiled GET request for one endpoint. The query string is split once into
+ * literal pieces, with the fixed parameters (api key, sort order, page size)
+ * already encoded, so building a request only encodes the varying values and
+ * joins them in a single {@code StringBuilder}.
+ *
+ * <pre>
+ * RequestTemplate search = RequestTemplate.builder(endpoint)
+ * 		.param("q_track").param("q_artist").fixed("apikey", key).build();
+ * HttpRequest request = search.request(null, track, artist);
+ * </pre>
+ */
+public final class RequestTemplate {
+
+	/** Builds a {@code RequestTemplate}; parameters keep the order they are added in. */
+	public static final class Builder {
+		private final String endpoint;
+		private final StringBuilder pending = new StringBuilder();
+		private final List<String> pieces = new ArrayList<String>();
+
+		private Builder(String endpoint) {
+			this.endpoint = endpoint;
+		}
+
+		/**
+		 * Adds a parameter whose value is given for each request.
+		 *
+		 * @param name
+		 * @return Builder
+		 */
+		public Builder param(String name) {
+			separator();
+			pending.append(encode(name)).append('=');
+			pieces.add(pending.toString());
+			pending.setLength(0);
+			return this;
+		}
+
+		/**
+		 * Adds a parameter with the same value in every request.
+		 *
+		 * @param name
+		 * @param value
+		 * @return Builder
+		 */
+		public Builder fixed(String name, String value) {
+			separator();
+			pending.append(encode(name)).append('=').append(encode(value));
+			return this;
+		}
+
+		public RequestTemplate build() {
+			return new RequestTemplate(endpoint, pieces.toArray(new String[0]), pending.toString());
+		}
+
+		private void separator() {
+			if (pieces.size() > 0 || pending.length() > 0) {
+				pending.append('&');
+			}
+		}
+	}
+
+	private final String endpoint;
+	private final String[] pieces; // literal text before each varying value
+	private final String suffix; // literal text after the last one
+	private final int literalLength;
+
+	private RequestTemplate(String endpoint, String[] pieces, String suffix) {
+		this.endpoint = endpoint;
+		this.pieces = pieces;
+		this.suffix = suffix;
+		int length = endpoint.length() + suffix.length();
+		for (String piece : pieces) {
+			length += piece.length();
+		}
+		this.literalLength = length;
+	}
+
+	/**
+	 * Returns a builder for requests to {@code endpoint}, which may or may not end
+	 * in {@code ?}.
+	 *
+	 * @param endpoint
+	 * @return Builder
+	 */
+	public static Builder builder(String endpoint) {
+		return new Builder(endpoint.endsWith("?") ? endpoint : endpoint + "?");
+	}
+
+	/**
+	 * Returns the URI for the given values of the varying parameters.
+	 *
+	 * @param values one per {@link Builder#param}, in order
+	 * @return URI
+	 */
+	public URI uri(String... values) {
+		if (values.length != pieces.length) {
+			throw new IllegalArgumentException("expected " + pieces.length + " values, got " + values.length);
+		}
+		StringBuilder url = new StringBuilder(literalLength + 16 * values.length).append(endpoint);
+		for (int i = 0; i < values.length; i++) {
+			url.append(pieces[i]).append(encode(values[i]));
+		}
+		return URI.create(url.append(suffix).toString());
+	}
+
+	/**
+	 * Returns a GET request for the given values of the varying parameters.
+	 *
+	 * @param timeout request timeout, or {@code null} for none
+	 * @param values  one per {@link Builder#param}, in order
+	 * @return HttpRequest
+	 */
+	public HttpRequest request(Duration timeout, String... values) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(uri(values));
+		if (timeout != null) {
+			builder.timeout(timeout);
+		}
+		return builder.build();
+	}
+
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+}
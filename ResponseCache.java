@@ -0,0 +1,426 @@
+package cs1302.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Shivam Mishra
+ * Two tier cache of API response bodies. Recently used bodies are kept in an in
+ * memory LRU map, and every body is also appended to a segment file on disk so
+ * that it survives a restart. Entries expire after the TTL given when they were
+ * stored, and the oldest segment is deleted once the disk tier grows past its
+ * size budget.
+ *
+ * <p>
+ * A segment is a sequence of records of the form
+ * {@code [key (UTF), expiresAt (long), length (int), body (UTF-8 bytes)]}.
+ * Segments are never rewritten; a newer record for the same key simply wins when
+ * the index is rebuilt at startup.
+ *
+ * <p>
+ * Only the process holding the {@code segments.lock} of the directory writes
+ * the segments. Another process opening the same directory, such as a
+ * {@link BatchEnricher} next to a running app, reads the bodies that were
+ * there when it opened and keeps what it stores in memory.
+ */
+public class ResponseCache {
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".dat";
+	private static final String LOCK_FILE = "segments.lock";
+	private static final Log LOG = Log.get(ResponseCache.class);
+
+	/** Location of a record body on disk. */
+	private static class DiskEntry {
+		final long segment;
+		final long offset;
+		final int length;
+		final long expiresAt;
+
+		DiskEntry(long segment, long offset, int length, long expiresAt) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/** A body held in the memory tier. */
+	private static class MemoryEntry {
+		final String body;
+		final long expiresAt;
+
+		MemoryEntry(String body, long expiresAt) {
+			this.body = body;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final File directory;
+	private final long maxMemoryChars;
+	private final long maxSegmentBytes;
+	private final long maxDiskBytes;
+
+	private final LinkedHashMap<String, MemoryEntry> memory = new LinkedHashMap<String, MemoryEntry>(64, 0.75f, true);
+	private long memoryChars = 0;
+	private final Map<String, DiskEntry> index = new HashMap<String, DiskEntry>();
+	private final TreeMap<Long, Long> segmentSizes = new TreeMap<Long, Long>(); // segment id -> bytes
+	private long activeSegment = -1;
+	private RandomAccessFile activeFile;
+	private ProcessLock writeLock; // null when another process writes the segments
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Opens the cache stored in {@code directory} with default size budgets: 4M
+	 * characters in memory, 4 MB segments and 64 MB on disk.
+	 *
+	 * @param directory
+	 */
+	public ResponseCache(File directory) {
+		this(directory, 4L << 20, 4L << 20, 64L << 20);
+	}
+
+	/**
+	 * Opens the cache stored in {@code directory}, rebuilding the disk index from
+	 * the segments already there. If the directory cannot be used the cache keeps
+	 * working in memory only.
+	 *
+	 * @param directory       directory of the segment files
+	 * @param maxMemoryChars  budget of the memory tier, in characters
+	 * @param maxSegmentBytes size at which a new segment is started
+	 * @param maxDiskBytes    budget of the disk tier, in bytes
+	 */
+	public ResponseCache(File directory, long maxMemoryChars, long maxSegmentBytes, long maxDiskBytes) {
+		this.directory = directory;
+		this.maxMemoryChars = maxMemoryChars;
+		this.maxSegmentBytes = maxSegmentBytes;
+		this.maxDiskBytes = maxDiskBytes;
+		if (directory == null) {
+			return; // disabled
+		}
+		try {
+			loadIndex();
+		} catch (IOException ioe) {
+			LOG.warn("Response cache disabled on disk: %s", ioe.toString());
+		}
+	}
+
+	/**
+	 * Returns a cache that stores nothing, every lookup is a miss.
+	 *
+	 * @return ResponseCache
+	 */
+	public static ResponseCache disabled() {
+		return new ResponseCache(null, 0, 0, 0);
+	}
+
+	/**
+	 * Builds a normalized cache key from an endpoint and its varying query
+	 * parameters, given as name/value pairs. Values are trimmed, lower cased and
+	 * have their inner whitespace collapsed, and parameters are sorted by name, so
+	 * that "Dua  Lipa" and "dua lipa" share an entry. Secrets such as the api key
+	 * should not be passed in.
+	 *
+	 * @param endpoint
+	 * @param params
+	 * @return String
+	 */
+	public static String key(String endpoint, String... params) {
+		if (params.length % 2 != 0) {
+			throw new IllegalArgumentException("params must be name/value pairs");
+		}
+		TreeMap<String, String> sorted = new TreeMap<String, String>();
+		for (int i = 0; i < params.length; i += 2) {
+			String value = params[i + 1] == null ? "" : params[i + 1];
+			sorted.put(params[i], value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT));
+		}
+		StringBuilder key = new StringBuilder(endpoint);
+		for (Map.Entry<String, String> param : sorted.entrySet()) {
+			key.append('|').append(param.getKey()).append('=').append(param.getValue());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the cached body for a key, looking in memory first and then on disk.
+	 *
+	 * @param key
+	 * @return Optional<String>
+	 */
+	public synchronized Optional<String> get(String key) {
+		long now = System.currentTimeMillis();
+		MemoryEntry cached = memory.get(key);
+		if (cached != null) {
+			if (cached.expiresAt > now) {
+				memoryHits.incrementAndGet();
+				return Optional.of(cached.body);
+			}
+			removeFromMemory(key);
+		}
+		DiskEntry entry = index.get(key);
+		if (entry != null) {
+			if (entry.expiresAt > now) {
+				try {
+					String body = readBody(entry);
+					putInMemory(key, new MemoryEntry(body, entry.expiresAt));
+					diskHits.incrementAndGet();
+					return Optional.of(body);
+				} catch (IOException ioe) {
+					LOG.warn("Could not read cached response: %s", ioe.toString());
+				}
+			}
+			index.remove(key);
+		}
+		misses.incrementAndGet();
+		return Optional.empty();
+	}
+
+	/**
+	 * Returns whether a key has a live entry in either tier, without reading it or
+	 * counting a hit or miss.
+	 *
+	 * @param key
+	 * @return boolean
+	 */
+	public synchronized boolean contains(String key) {
+		long now = System.currentTimeMillis();
+		MemoryEntry cached = memory.get(key);
+		if (cached != null && cached.expiresAt > now) {
+			return true;
+		}
+		DiskEntry entry = index.get(key);
+		return entry != null && entry.expiresAt > now;
+	}
+
+	/**
+	 * Stores a body in both tiers.
+	 *
+	 * @param key
+	 * @param body
+	 * @param ttl how long the body stays valid
+	 */
+	public synchronized void put(String key, String body, Duration ttl) {
+		if (maxMemoryChars == 0 && directory == null) {
+			return; // disabled
+		}
+		long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+		putInMemory(key, new MemoryEntry(body, expiresAt));
+		try {
+			append(key, body, expiresAt);
+		} catch (IOException ioe) {
+			LOG.warn("Could not write cached response: %s", ioe.toString());
+		}
+	}
+
+	/**
+	 * Returns a one line summary of the hit and miss counters.
+	 *
+	 * @return String
+	 */
+	public String stats() {
+		long mem = memoryHits.get();
+		long disk = diskHits.get();
+		long miss = misses.get();
+		long total = mem + disk + miss;
+		double rate = total == 0 ? 0 : 100.0 * (mem + disk) / total;
+		return String.format(Locale.ROOT, "cache hits: %d memory, %d disk, %d misses (%.1f%% hit rate)", mem, disk,
+				miss, rate);
+	}
+
+	public long memoryHits() {
+		return memoryHits.get();
+	}
+
+	public long diskHits() {
+		return diskHits.get();
+	}
+
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * Closes the active segment file and gives up writing the directory.
+	 */
+	public synchronized void close() {
+		if (activeFile != null) {
+			try {
+				activeFile.close();
+			} catch (IOException ioe) {
+				LOG.warn("Could not close cache segment: %s", ioe.toString());
+			}
+			activeFile = null;
+		}
+		if (writeLock != null) {
+			writeLock.close();
+			writeLock = null;
+		}
+	}
+
+	private void putInMemory(String key, MemoryEntry entry) {
+		removeFromMemory(key);
+		memory.put(key, entry);
+		memoryChars += entry.body.length();
+		Iterator<Map.Entry<String, MemoryEntry>> eldest = memory.entrySet().iterator();
+		while (memoryChars > maxMemoryChars && eldest.hasNext()) {
+			memoryChars -= eldest.next().getValue().body.length();
+			eldest.remove();
+		}
+	}
+
+	private void removeFromMemory(String key) {
+		MemoryEntry old = memory.remove(key);
+		if (old != null) {
+			memoryChars -= old.body.length();
+		}
+	}
+
+	private File segmentFile(long segment) {
+		return new File(directory, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * Takes the write lock of the directory if it is free, then scans every
+	 * segment in id order and rebuilds the key index.
+	 */
+	private void loadIndex() throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot create " + directory);
+		}
+		writeLock = ProcessLock.tryAcquire(new File(directory, LOCK_FILE));
+		if (writeLock == null) {
+			LOG.warn("Response cache %s is written by another process, new responses are kept in memory",
+					directory);
+		}
+		String[] names = directory.list();
+		List<Long> segments = new ArrayList<Long>();
+		for (String name : names == null ? new String[0] : names) {
+			if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+				try {
+					segments.add(Long.parseLong(
+							name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not one of ours
+				}
+			}
+		}
+		Long[] sorted = segments.toArray(new Long[0]);
+		Arrays.sort(sorted);
+		long now = System.currentTimeMillis();
+		for (long segment : sorted) {
+			try (RandomAccessFile file = new RandomAccessFile(segmentFile(segment), "r")) {
+				long length = file.length();
+				long position = 0;
+				try {
+					while (position < length) {
+						String key = file.readUTF();
+						long expiresAt = file.readLong();
+						int size = file.readInt();
+						long offset = file.getFilePointer();
+						if (offset + size > length) {
+							break; // torn write at the end of the segment
+						}
+						file.seek(offset + size);
+						position = offset + size;
+						if (expiresAt > now) {
+							index.put(key, new DiskEntry(segment, offset, size, expiresAt));
+						} else {
+							index.remove(key);
+						}
+					}
+				} catch (IOException torn) {
+					// keep whatever was read before the damaged record
+				}
+				segmentSizes.put(segment, position);
+			}
+			activeSegment = segment;
+		}
+	}
+
+	private String readBody(DiskEntry entry) throws IOException {
+		if (entry.segment == activeSegment && activeFile != null) {
+			byte[] bytes = new byte[entry.length];
+			long end = activeFile.getFilePointer();
+			activeFile.seek(entry.offset);
+			activeFile.readFully(bytes);
+			activeFile.seek(end);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		try (RandomAccessFile file = new RandomAccessFile(segmentFile(entry.segment), "r")) {
+			byte[] bytes = new byte[entry.length];
+			file.seek(entry.offset);
+			file.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	private void append(String key, String body, long expiresAt) throws IOException {
+		if (directory == null || writeLock == null || !directory.isDirectory()) {
+			return; // memory only
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		if (activeFile == null || activeFile.length() >= maxSegmentBytes) {
+			rollSegment();
+		}
+		activeFile.seek(activeFile.length());
+		activeFile.writeUTF(key);
+		activeFile.writeLong(expiresAt);
+		activeFile.writeInt(bytes.length);
+		long offset = activeFile.getFilePointer();
+		activeFile.write(bytes);
+		index.put(key, new DiskEntry(activeSegment, offset, bytes.length, expiresAt));
+		segmentSizes.put(activeSegment, activeFile.length());
+		evictSegments();
+	}
+
+	private void rollSegment() throws IOException {
+		if (activeFile != null) {
+			activeFile.close();
+		}
+		if (activeSegment >= 0 && segmentSizes.getOrDefault(activeSegment, 0L) < maxSegmentBytes) {
+			activeFile = new RandomAccessFile(segmentFile(activeSegment), "rw"); // reopen after a restart
+			activeFile.setLength(segmentSizes.getOrDefault(activeSegment, 0L)); // cut a torn record off the end
+			return;
+		}
+		activeSegment++;
+		activeFile = new RandomAccessFile(segmentFile(activeSegment), "rw");
+		segmentSizes.put(activeSegment, 0L);
+	}
+
+	/**
+	 * Deletes the oldest segments until the disk tier fits its budget again. The
+	 * active segment is never deleted.
+	 */
+	private void evictSegments() {
+		long total = 0;
+		for (long size : segmentSizes.values()) {
+			total += size;
+		}
+		while (total > maxDiskBytes && segmentSizes.size() > 1) {
+			Map.Entry<Long, Long> oldest = segmentSizes.pollFirstEntry();
+			total -= oldest.getValue();
+			long segment = oldest.getKey();
+			index.values().removeIf(entry -> entry.segment == segment);
+			if (!segmentFile(segment).delete()) {
+				LOG.warn("Could not delete cache segment %s", segment);
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package cs1302.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Shivam Mishra
+ * Runs searches off the JavaFX application thread, one at a time. A search is a
+ * single task that owns all of its network work: the iTunes fetch and the
+ * musixmatch lookups started by {@link TrackEnricher} run inside it and stop when
+ * it is interrupted. Submitting a new search cancels the one still running, so
+ * quick repeated clicks never leave two searches racing to fill the screen.
+ * Work a search starts later, such as fetching its next page, runs as a follow
+ * up that is cancelled together with it.
+ */
+public class SearchExecutor {
+
+	private final ExecutorService executor;
+	private final List<Future<?>> current = new ArrayList<Future<?>>(); // the search and its follow ups
+
+	/**
+	 * Constructs a {@code SearchExecutor} backed by daemon threads, so a search in
+	 * progress never keeps the application from exiting.
+	 */
+	public SearchExecutor() {
+		AtomicInteger count = new AtomicInteger();
+		ThreadFactory factory = runnable -> {
+			Thread thread = new Thread(runnable, "search-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.executor = Executors.newCachedThreadPool(factory);
+	}
+
+	/**
+	 * Cancels the running search, if any, and starts {@code search}. Searches are
+	 * usually JavaFX {@code Task}s, whose cancelled handlers then run as usual.
+	 *
+	 * @param search
+	 */
+	public synchronized void submit(RunnableFuture<?> search) {
+		cancelCurrent();
+		current.add(search);
+		executor.execute(search);
+	}
+
+	/**
+	 * Starts {@code work} for the running search, next to it, so that it is
+	 * cancelled when the search is.
+	 *
+	 * @param work
+	 */
+	public synchronized void submitFollowUp(RunnableFuture<?> work) {
+		current.removeIf(Future::isDone);
+		current.add(work);
+		executor.execute(work);
+	}
+
+	/**
+	 * Cancels the running search and its follow ups, if any. Their threads are
+	 * interrupted, which also ends the lookups they are waiting on.
+	 */
+	public synchronized void cancelCurrent() {
+		for (Future<?> running : current) {
+			running.cancel(true);
+		}
+		current.clear();
+	}
+
+	/**
+	 * Cancels the running search and stops accepting new ones.
+	 */
+	public synchronized void shutdown() {
+		cancelCurrent();
+		executor.shutdownNow();
+	}
+}
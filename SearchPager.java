@@ -0,0 +1,79 @@
+package cs1302.api;
+
+import java.util.function.Consumer;
+
+import cs1302.api.ITunesApi.ItunesResult;
+
+/**
+ * @author Shivam Mishra
+ * Paging state of one search: the offset of the next page, the names of every
+ * result shown so far, and whether iTunes has run out of results. Pages are
+ * fetched one at a time, only when asked for, so a long catalog costs memory
+ * and requests in proportion to how far it is scrolled.
+ */
+public class SearchPager {
+
+	/** Results iTunes returns for one search at most, whatever the offset. */
+	static final int MAX_RESULTS = 200;
+
+	private final String searchText;
+	private final String searchType;
+	private final int pageSize;
+	private final DistinctNames seen = new DistinctNames();
+	private volatile int nextOffset;
+	private volatile boolean exhausted;
+
+	/**
+	 * Constructs a {@code SearchPager} starting at the first page.
+	 *
+	 * @param searchText
+	 * @param searchType
+	 * @param pageSize   results asked for per page, see {@link ApiApp#LIMIT}
+	 */
+	public SearchPager(String searchText, String searchType, int pageSize) {
+		this.searchText = searchText;
+		this.searchType = searchType;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Marks a name as shown, so the pages fetched later leave it out. Used for
+	 * results that came from somewhere else, such as the local index.
+	 *
+	 * @param trackName
+	 */
+	public synchronized void markShown(String trackName) {
+		seen.add(trackName);
+	}
+
+	/**
+	 * Fetches the next page. A page holding fewer results than asked for is the
+	 * last one, and so is one reaching the {@code MAX_RESULTS} iTunes returns at
+	 * most. A page of nothing but repeats is the last too, as more pages of the
+	 * same would follow on every scroll, and so is a failed page, so a failing
+	 * search is not retried on every scroll; searching again starts over.
+	 *
+	 * @param api
+	 * @param onResult     called with each result not shown before
+	 * @param reportErrors whether a failure raises an alert
+	 * @return ITunesApi.Page, or {@code null} if the request failed
+	 */
+	public synchronized ITunesApi.Page next(ITunesApi api, Consumer<ItunesResult> onResult, boolean reportErrors) {
+		ITunesApi.Page page = api.searchPage(searchText, searchType, nextOffset, seen, onResult, reportErrors);
+		if (page == null) {
+			exhausted = true;
+		} else {
+			nextOffset += pageSize;
+			exhausted = page.received < pageSize || page.results.isEmpty() || nextOffset >= MAX_RESULTS;
+		}
+		return page;
+	}
+
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	public int getNextOffset() {
+		return nextOffset;
+	}
+}
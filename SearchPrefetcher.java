@@ -0,0 +1,102 @@
+package cs1302.api;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Shivam Mishra
+ * Fetches the iTunes results of the queries a partly typed query most likely
+ * becomes, according to the {@link QueryHistory}, so they are in the response
+ * cache and the {@link TrackIndex} before the user finishes typing. Only
+ * queries searched at least {@code MIN_COUNT} times are guessed, at most
+ * {@code GUESSES} per keystroke pause, and never when already cached, so a
+ * guess costs a request only when it is likely to save one. Guesses run on a
+ * single low priority thread and only the newest few are kept queued.
+ */
+public class SearchPrefetcher {
+
+	private static final int MIN_COUNT = 2;
+	private static final int GUESSES = 2;
+	private static final int QUEUE = 4;
+	private static final Log LOG = Log.get(SearchPrefetcher.class);
+
+	private final QueryHistory history;
+	private final LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<Runnable>();
+	private final ThreadPoolExecutor prefetcher;
+	private final Set<String> queued = ConcurrentHashMap.newKeySet();
+	private final AtomicLong sent = new AtomicLong();
+
+	/**
+	 * Constructs a {@code SearchPrefetcher} guessing from {@code history}.
+	 *
+	 * @param history
+	 */
+	public SearchPrefetcher(QueryHistory history) {
+		this.history = history;
+		this.prefetcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, queue, runnable -> {
+			Thread thread = new Thread(runnable, "search-prefetch");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		Metrics.gauge("itunes.prefetch.queued", queue::size);
+		Metrics.gauge("itunes.prefetch.sent", sent::get);
+	}
+
+	/**
+	 * Queues the likely completions of {@code typed} that are not cached yet.
+	 *
+	 * @param typed
+	 * @param searchType
+	 */
+	public void prefetchCompletions(String typed, String searchType) {
+		List<String> guesses = history.completions(typed, MIN_COUNT, GUESSES);
+		for (int i = guesses.size() - 1; i >= 0; i--) { // best guess ends up first
+			String guess = guesses.get(i);
+			if (ITunesApi.isCached(guess, searchType) || !queued.add(guess)) {
+				continue;
+			}
+			while (queue.size() >= QUEUE) {
+				Runnable dropped = queue.pollLast();
+				if (dropped instanceof Prefetch) {
+					queued.remove(((Prefetch) dropped).query);
+				}
+			}
+			queue.offerFirst(new Prefetch(guess, searchType));
+			prefetcher.prestartCoreThread();
+		}
+	}
+
+	public void shutdown() {
+		prefetcher.shutdownNow();
+	}
+
+	/** A queued guess, kept as a class so a dropped one can be identified. */
+	private class Prefetch implements Runnable {
+		final String query;
+		final String searchType;
+
+		Prefetch(String query, String searchType) {
+			this.query = query;
+			this.searchType = searchType;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (!ITunesApi.isCached(query, searchType)) {
+					LOG.debug("Prefetching %s", query);
+					sent.incrementAndGet();
+					new ITunesApi().search(query, searchType, null, false);
+				}
+			} finally {
+				queued.remove(query);
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package cs1302.api;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author Shivam Mishra
+ * A searchable source of results, such as the iTunes catalog or Open Library.
+ * Providers are small adapters over {@link ClientCore}: they build the request
+ * and decode the response, and the core does the sending, caching, retries and
+ * metrics. A new source is added by implementing this interface and
+ * registering it with {@link Providers}.
+ *
+ * @param <R> result type
+ */
+public interface SearchProvider<R> {
+
+	/**
+	 * Returns the name the provider is registered under, e.g. {@code itunes}.
+	 *
+	 * @return String
+	 */
+	String name();
+
+	/**
+	 * Searches the source without blocking. The future fails if the source could
+	 * not be reached.
+	 *
+	 * @param query
+	 * @param limit most results wanted
+	 * @return CompletableFuture<List<R>>
+	 */
+	CompletableFuture<List<R>> searchAsync(String query, int limit);
+
+	/**
+	 * Returns the title of a result, the name it is joined with results of other
+	 * sources by.
+	 *
+	 * @param result
+	 * @return String
+	 */
+	String titleOf(R result);
+
+	/**
+	 * Returns the artist or author of a result, or {@code null} if it has none.
+	 *
+	 * @param result
+	 * @return String
+	 */
+	String creatorOf(R result);
+}
@@ -0,0 +1,217 @@
+package cs1302.api;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import cs1302.api.ITunesApi.ItunesResult;
+import cs1302.api.MusixMatchApi.Track;
+
+/**
+ * @author Shivam Mishra
+ * The result list of the last session, kept in a small binary file so the
+ * next launch can show it before anything is fetched. The file holds the
+ * query, the rank mode and up to {@code MAX_ROWS} rows with their track
+ * details, rating and artwork URL; strings that repeat, such as artist names,
+ * are written once in a table at the front. It is written atomically on exit
+ * and mapped back in at startup; a missing, older or damaged file reads as no
+ * session.
+ */
+public class SessionSnapshot {
+
+	/** A restored session. */
+	public static final class Session {
+		public final String query;
+		public final RankMode mode;
+		public final List<TrackRow> rows;
+
+		Session(String query, RankMode mode, List<TrackRow> rows) {
+			this.query = query;
+			this.mode = mode;
+			this.rows = rows;
+		}
+	}
+
+	private static final int MAGIC = 0x4D795475; // "MyTu"
+	private static final short VERSION = 1;
+	private static final int MAX_ROWS = 200; // a few screens, the rest pages in again
+	private static final byte PENDING = 0;
+	private static final byte NOT_FOUND = 1;
+	private static final byte FOUND = 2;
+	private static final Log LOG = Log.get(SessionSnapshot.class);
+
+	private final File file;
+
+	/**
+	 * Constructs a {@code SessionSnapshot} kept in {@code file}.
+	 *
+	 * @param file
+	 */
+	public SessionSnapshot(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Writes the rows shown, in their order, replacing the last snapshot
+	 * atomically. Must be called on the JavaFX application thread.
+	 *
+	 * @param query
+	 * @param mode
+	 * @param rows
+	 */
+	public void save(String query, RankMode mode, List<TrackRow> rows) {
+		int count = Math.min(MAX_ROWS, rows.size());
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		ByteArrayOutputStream body = new ByteArrayOutputStream(count * 64);
+		File tmp = new File(file.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(body);
+			out.writeInt(count);
+			for (TrackRow row : rows.subList(0, count)) {
+				ItunesResult result = row.getResult();
+				for (String value : new String[] { result.trackName, result.artistName, result.artworkUrl100,
+						result.kind, result.wrapperType, result.country, result.currency }) {
+					out.writeInt(ref(strings, value));
+				}
+				out.writeInt(row.getReleaseDay());
+				Track track = row.getTrack();
+				out.writeByte(!row.isResolved() ? PENDING : track == null ? NOT_FOUND : FOUND);
+				if (track != null) {
+					out.writeInt(track.track_id);
+					out.writeInt(track.commontrack_id);
+					out.writeInt(track.artist_id);
+					out.writeByte(track.track_rating);
+					out.writeByte(track.has_lyrics);
+					out.writeInt(ref(strings, track.track_name));
+					out.writeInt(ref(strings, track.artist_name));
+				}
+			}
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				parent.mkdirs();
+			}
+			try (DataOutputStream head = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				head.writeInt(MAGIC);
+				head.writeShort(VERSION);
+				writeString(head, query);
+				head.writeByte(mode.ordinal());
+				head.writeInt(strings.size());
+				for (String value : strings.keySet()) {
+					writeString(head, value);
+				}
+				body.writeTo(head);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			LOG.debug("Session saved, %s rows", count);
+		} catch (IOException e) {
+			LOG.warn("Could not save the session: %s", e.toString());
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Reads the last session back, or returns {@code null} if there is none or
+	 * it cannot be read.
+	 *
+	 * @return Session
+	 */
+	public Session load() {
+		if (!file.isFile() || file.length() == 0) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+				LOG.info("Session snapshot from another version, not restored");
+				return null;
+			}
+			String query = readString(buffer);
+			RankMode mode = RankMode.values()[buffer.get()];
+			int stringCount = buffer.getInt();
+			if (stringCount < 0 || stringCount > buffer.remaining() / Integer.BYTES) { // a string takes 4 bytes at least
+				throw new BufferUnderflowException();
+			}
+			String[] strings = new String[stringCount];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = readString(buffer);
+			}
+			int count = buffer.getInt();
+			if (count < 0 || count > MAX_ROWS) {
+				throw new BufferUnderflowException();
+			}
+			List<TrackRow> rows = new ArrayList<TrackRow>(count);
+			for (int i = 0; i < count; i++) {
+				ItunesResult result = new ItunesResult();
+				result.trackName = get(strings, buffer.getInt());
+				result.artistName = get(strings, buffer.getInt());
+				result.artworkUrl100 = get(strings, buffer.getInt());
+				result.kind = get(strings, buffer.getInt());
+				result.wrapperType = get(strings, buffer.getInt());
+				result.country = get(strings, buffer.getInt());
+				result.currency = get(strings, buffer.getInt());
+				int day = buffer.getInt();
+				result.releaseDate = day == TrackStore.NO_DATE ? null : LocalDate.ofEpochDay(day) + "T00:00:00Z";
+				TrackRow row = new TrackRow(result);
+				byte state = buffer.get();
+				if (state == FOUND) {
+					Track track = new Track();
+					track.track_id = buffer.getInt();
+					track.commontrack_id = buffer.getInt();
+					track.artist_id = buffer.getInt();
+					track.track_rating = buffer.get();
+					track.has_lyrics = buffer.get();
+					track.track_name = get(strings, buffer.getInt());
+					track.artist_name = get(strings, buffer.getInt());
+					row.resolve(track);
+				} else if (state == NOT_FOUND) {
+					row.resolve(null);
+				}
+				rows.add(row);
+			}
+			return new Session(query, mode, rows);
+		} catch (IOException | RuntimeException e) { // a damaged file must not stop the app from starting
+			LOG.warn("Session snapshot unreadable, not restored: %s", e.toString());
+			return null;
+		}
+	}
+
+	private static int ref(Map<String, Integer> strings, String value) {
+		return value == null ? -1 : strings.computeIfAbsent(value, k -> strings.size());
+	}
+
+	private static String get(String[] strings, int ref) {
+		return ref == -1 ? null : strings[ref];
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(MappedByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
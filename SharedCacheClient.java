@@ -0,0 +1,356 @@
+package cs1302.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author Shivam Mishra
+ * Client of a {@link SharedCacheServer}, consulted by {@link ClientCore} and
+ * the iTunes search after {@link ResponseCache} and before the network. A
+ * {@link #lookup} comes back with the body another machine fetched, or with a
+ * lease to fetch it and {@link #put} it for the others, or as a plain miss
+ * when the server is unreachable or slow; the cache is an optimization, so
+ * every failure of it is a miss and never an error. Requests share one
+ * connection, each tagged with an id, and a dropped connection is retried at
+ * most every few seconds. Each connection starts by proving the
+ * {@code shared.secret} to the server.
+ */
+public class SharedCacheClient implements AutoCloseable {
+
+	/** The answer to a {@link #lookup}. */
+	public static final class Lookup {
+		static final Lookup MISS = new Lookup(null, false);
+		static final Lookup LEASED = new Lookup(null, true);
+
+		private final String body;
+		private final boolean leased;
+
+		private Lookup(String body, boolean leased) {
+			this.body = body;
+			this.leased = leased;
+		}
+
+		/** The shared body, or {@code null} if it has to be fetched. */
+		public String getBody() {
+			return body;
+		}
+
+		/**
+		 * Whether this client should fetch the body and {@link #put} it, or
+		 * {@link #release} the key if it cannot; others wait for it meanwhile.
+		 */
+		public boolean isLeased() {
+			return leased;
+		}
+	}
+
+	/** A lookup waiting for its answer. */
+	private static final class Pending {
+		final String key;
+		final CompletableFuture<Lookup> answer = new CompletableFuture<Lookup>();
+
+		Pending(String key) {
+			this.key = key;
+		}
+	}
+
+	private static final long RECONNECT_MILLIS = 5_000;
+	private static final int CONNECT_TIMEOUT_MILLIS = 1_000;
+	private static final int MAX_KEY = 0xFFFF;
+	private static final Log LOG = Log.get(SharedCacheClient.class);
+
+	private final InetSocketAddress address; // null when disabled
+	private final String secret;
+	private final Duration wait;
+	private final SharedCacheServer local; // started by this client, or null
+	private final Map<Integer, Pending> pending = new ConcurrentHashMap<Integer, Pending>();
+	private final AtomicInteger ids = new AtomicInteger();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong leases = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private Socket socket;
+	private DataOutputStream out;
+	private long retryAt;
+
+	private SharedCacheClient(InetSocketAddress address, String secret, Duration wait, SharedCacheServer local) {
+		this.address = address;
+		this.secret = secret;
+		this.wait = wait;
+		this.local = local;
+		if (address != null) {
+			Metrics.gauge("shared.client.hits", hits::get);
+			Metrics.gauge("shared.client.leases", leases::get);
+			Metrics.gauge("shared.client.misses", misses::get);
+		}
+	}
+
+	/**
+	 * Returns a client of the server named by {@code shared.cache}: one on
+	 * another host, one started in this JVM for {@code local}, or a client that
+	 * always misses when the setting is empty.
+	 *
+	 * @param config
+	 * @return SharedCacheClient
+	 */
+	public static SharedCacheClient create(AppConfig config) {
+		String target = config.sharedCache();
+		Duration wait = config.sharedLease().plusSeconds(1); // a held lookup ends by the lease at the latest
+		if (target == null) {
+			return disabled();
+		}
+		if (target.equals("local")) {
+			SharedCacheServer server = SharedCacheServer.startLocal(config);
+			return new SharedCacheClient(new InetSocketAddress("127.0.0.1", server.getPort()), config.sharedSecret(),
+					wait, server);
+		}
+		int colon = target.lastIndexOf(':');
+		try {
+			int port = colon < 0 ? SharedCacheServer.DEFAULT_PORT : Integer.parseInt(target.substring(colon + 1));
+			String host = colon < 0 ? target : target.substring(0, colon);
+			return new SharedCacheClient(InetSocketAddress.createUnresolved(host, port), config.sharedSecret(), wait,
+					null);
+		} catch (NumberFormatException e) {
+			LOG.warn("Setting shared.cache is not host:port: %s", target);
+			return disabled();
+		}
+	}
+
+	/**
+	 * Returns a client that always misses.
+	 *
+	 * @return SharedCacheClient
+	 */
+	public static SharedCacheClient disabled() {
+		return new SharedCacheClient(null, "", Duration.ZERO, null);
+	}
+
+	public boolean isEnabled() {
+		return address != null;
+	}
+
+	/**
+	 * Asks the server for the body of {@code key}. The future never fails: an
+	 * unreachable server, a lost connection or no answer within the lease time
+	 * all complete it with a miss without a lease.
+	 *
+	 * @param key a {@link ResponseCache#key}, with no secrets in it
+	 * @return CompletableFuture<Lookup>
+	 */
+	public CompletableFuture<Lookup> lookup(String key) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		if (address == null || keyBytes.length > MAX_KEY) {
+			return CompletableFuture.completedFuture(Lookup.MISS);
+		}
+		int id = ids.incrementAndGet();
+		Pending lookup = new Pending(key);
+		pending.put(id, lookup);
+		if (!send(SharedCacheServer.GET, id, keyBytes, null, 0)) {
+			pending.remove(id);
+			misses.incrementAndGet();
+			return CompletableFuture.completedFuture(Lookup.MISS);
+		}
+		// a late answer stays pending until it comes, so a late lease can be given back
+		return lookup.answer.completeOnTimeout(Lookup.MISS, wait.toMillis(), TimeUnit.MILLISECONDS)
+				.whenComplete((answer, error) -> {
+					if (answer == Lookup.MISS) {
+						misses.incrementAndGet();
+					}
+				});
+	}
+
+	/**
+	 * Shares a body fetched from the network, ending the lease on its key if
+	 * this client holds it.
+	 *
+	 * @param key
+	 * @param body
+	 * @param ttl
+	 */
+	public void put(String key, String body, Duration ttl) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		if (address == null || keyBytes.length > MAX_KEY) {
+			return;
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length() / 4);
+		try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+			gzip.write(body.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			return; // not thrown by a byte array
+		}
+		send(SharedCacheServer.PUT, 0, keyBytes, compressed.toByteArray(), ttl.toSeconds());
+	}
+
+	/**
+	 * Gives up the lease on {@code key} without a body, so the next client
+	 * waiting for it fetches it instead; does nothing once the key was put.
+	 *
+	 * @param key
+	 */
+	public void release(String key) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		if (address != null && keyBytes.length <= MAX_KEY) {
+			send(SharedCacheServer.RELEASE, 0, keyBytes, null, 0);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (socket != null) {
+			drop(socket);
+		}
+		if (local != null) {
+			local.close();
+		}
+	}
+
+	/** Writes one frame, connecting first if needed; returns false if it could not. */
+	private synchronized boolean send(byte op, int id, byte[] key, byte[] value, long ttlSeconds) {
+		if (!connected()) {
+			return false;
+		}
+		try {
+			out.writeByte(op);
+			out.writeInt(id);
+			out.writeShort(key.length);
+			out.write(key);
+			if (op == SharedCacheServer.PUT) {
+				out.writeInt((int) Math.min(Integer.MAX_VALUE, ttlSeconds));
+				out.writeInt(value.length);
+				out.write(value);
+			}
+			out.flush();
+			return true;
+		} catch (IOException e) {
+			LOG.debug("Shared cache write failed: %s", e.toString());
+			drop(socket);
+			return false;
+		}
+	}
+
+	private boolean connected() {
+		if (socket != null) {
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		if (now < retryAt) {
+			return false;
+		}
+		Socket opened = new Socket();
+		try {
+			InetSocketAddress resolved = new InetSocketAddress(address.getHostString(), address.getPort());
+			opened.connect(resolved, CONNECT_TIMEOUT_MILLIS);
+			opened.setTcpNoDelay(true);
+			byte[] nonce = new byte[SharedCacheServer.NONCE_BYTES];
+			opened.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+			// unbuffered, so nothing after the handshake is taken from read()
+			DataInputStream handshake = new DataInputStream(opened.getInputStream());
+			handshake.readFully(nonce);
+			DataOutputStream opening = new DataOutputStream(new BufferedOutputStream(opened.getOutputStream()));
+			opening.write(SharedCacheServer.proof(secret, nonce));
+			opening.flush();
+			if (handshake.read() != SharedCacheServer.WELCOME) {
+				throw new IOException("refused, check shared.secret");
+			}
+			opened.setSoTimeout(0);
+			socket = opened;
+			out = opening;
+			Thread reader = new Thread(() -> read(opened), "shared-cache-reader");
+			reader.setDaemon(true);
+			reader.start();
+			LOG.info("Connected to the shared cache at %s", resolved);
+			return true;
+		} catch (IOException e) {
+			retryAt = now + RECONNECT_MILLIS;
+			LOG.warn("Shared cache at %s unreachable, going to the APIs: %s",
+					address.getHostString() + ":" + address.getPort(), e.toString());
+			try {
+				opened.close();
+			} catch (IOException ignored) {
+				// never connected
+			}
+			return false;
+		}
+	}
+
+	/** Reads the answers of one connection until it drops. */
+	private void read(Socket connection) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()))) {
+			while (true) {
+				byte status = in.readByte();
+				int id = in.readInt();
+				String body = null;
+				if (status == SharedCacheServer.HIT) {
+					byte[] value = new byte[in.readInt()];
+					in.readFully(value);
+					body = decompress(value);
+				}
+				Pending lookup = pending.remove(id);
+				if (lookup == null) {
+					continue;
+				}
+				if (lookup.answer.isDone()) { // timed out and fetched without the cache
+					if (status == SharedCacheServer.LEASE) {
+						release(lookup.key); // so the next client waiting for it fetches it
+					}
+					continue;
+				}
+				if (status == SharedCacheServer.LEASE) {
+					leases.incrementAndGet();
+					lookup.answer.complete(Lookup.LEASED);
+				} else {
+					hits.incrementAndGet();
+					lookup.answer.complete(new Lookup(body, false));
+				}
+			}
+		} catch (IOException e) {
+			LOG.debug("Shared cache connection closed: %s", e.toString());
+		} finally {
+			synchronized (this) {
+				if (socket == connection) {
+					drop(connection);
+				}
+			}
+		}
+	}
+
+	/** Closes a connection and answers what waited on it with a miss. */
+	private synchronized void drop(Socket connection) {
+		try {
+			connection.close();
+		} catch (IOException ignored) {
+			// closing anyway
+		}
+		if (socket == connection) {
+			socket = null;
+			out = null;
+			retryAt = System.currentTimeMillis() + RECONNECT_MILLIS;
+		}
+		pending.values().forEach(lookup -> lookup.answer.complete(Lookup.MISS));
+		pending.clear();
+	}
+
+	private static String decompress(byte[] value) throws IOException {
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(value))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
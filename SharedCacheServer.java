@@ -0,0 +1,489 @@
+package cs1302.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * @author Shivam Mishra
+ * A cache of API response bodies shared by every app and {@link BatchEnricher}
+ * on a network, so a musixmatch or iTunes lookup made on one machine is not
+ * made again on the others. Clients talk to it through
+ * {@link SharedCacheClient} over one TCP connection each. A connection opens
+ * with the server sending a random nonce and the client answering with its
+ * HMAC-SHA256 under {@code shared.secret}; a client that gets it right is
+ * welcomed with one byte, one that gets it wrong is dropped. Then come binary
+ * frames:
+ *
+ * <pre>
+ * handshake: nonce (16 bytes) | client: HMAC (32) | WELCOME (1)
+ * request:  op (1 byte) | id (4) | key length (2) | key, UTF-8
+ *           PUT adds:   ttl seconds (4) | value length (4) | value
+ * response: status (1 byte) | id (4)
+ *           HIT adds:   value length (4) | value
+ * </pre>
+ *
+ * <p>
+ * A {@code GET} of a key nobody has answers {@code LEASE}: that client fetches
+ * the body and {@code PUT}s it, or {@code RELEASE}s the key if it could not.
+ * Every {@code GET} of the key in the meantime, from any client, is held until
+ * the {@code PUT} and then answered with its value, so the whole fleet makes
+ * one API call per distinct key. A released or expired lease passes to the
+ * next waiting client. Values are opaque to the server; the clients send them
+ * compressed. Entries live in memory until their ttl runs out or the least
+ * recently used are evicted to stay within {@code shared.maxMegabytes}.
+ *
+ * <p>
+ * Whoever can put a value decides what every client is told, so the server
+ * listens on loopback unless {@code shared.bind} says otherwise, and refuses
+ * to listen beyond it without a {@code shared.secret}. The secret proves who
+ * connects; the frames after it are neither encrypted nor signed, so a fleet
+ * belongs on a network it trusts.
+ *
+ * <pre>
+ * $ mvn clean compile
+ * $ mvn exec:java -Dexec.mainClass=cs1302.api.SharedCacheServer -Dcs1302.api.shared.port=7317 \
+ *       -Dcs1302.api.shared.bind=0.0.0.0 -Dcs1302.api.shared.secret=...
+ * </pre>
+ */
+public class SharedCacheServer implements AutoCloseable {
+
+	static final byte GET = 1;
+	static final byte PUT = 2;
+	static final byte RELEASE = 3;
+	static final byte HIT = 1;
+	static final byte LEASE = 2;
+	static final byte WELCOME = 1;
+	static final int DEFAULT_PORT = 7317;
+	static final int NONCE_BYTES = 16;
+	static final int PROOF_BYTES = 32;
+	private static final int HANDSHAKE_MILLIS = 5_000;
+	private static final int MAX_VALUE = 16 << 20; // larger frames are a broken client
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final Log LOG = Log.get(SharedCacheServer.class);
+
+	/** A stored value. */
+	private static final class Entry {
+		final byte[] value;
+		final long expires;
+
+		Entry(byte[] value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+
+	/** A request waiting on a key another client is fetching. */
+	private static final class Waiter {
+		final Connection connection;
+		final int id;
+
+		Waiter(Connection connection, int id) {
+			this.connection = connection;
+			this.id = id;
+		}
+	}
+
+	/** The client fetching a key, and who waits for it. */
+	private static final class Lease {
+		Connection holder;
+		long expires;
+		final ArrayDeque<Waiter> waiters = new ArrayDeque<Waiter>();
+	}
+
+	/** One client connection, read on its own thread. */
+	private final class Connection implements Runnable {
+		private final Socket socket;
+		private final DataOutputStream out;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		@Override
+		public void run() {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+				if (!handshake(in)) {
+					LOG.warn("Client %s refused, wrong shared.secret", socket.getRemoteSocketAddress());
+					return;
+				}
+				while (true) {
+					byte op = in.readByte();
+					int id = in.readInt();
+					byte[] keyBytes = new byte[in.readUnsignedShort()];
+					in.readFully(keyBytes);
+					String key = new String(keyBytes, StandardCharsets.UTF_8);
+					if (op == GET) {
+						get(this, id, key);
+					} else if (op == PUT) {
+						long ttlMillis = TimeUnit.SECONDS.toMillis(in.readInt());
+						int length = in.readInt();
+						if (length < 0 || length > MAX_VALUE) {
+							throw new IOException("value of " + length + " bytes");
+						}
+						byte[] value = new byte[length];
+						in.readFully(value);
+						put(key, value, ttlMillis);
+					} else if (op == RELEASE) {
+						release(this, key);
+					} else {
+						throw new IOException("unknown op " + op);
+					}
+				}
+			} catch (EOFException e) {
+				LOG.debug("Client %s left", socket.getRemoteSocketAddress());
+			} catch (IOException e) {
+				LOG.debug("Client %s dropped: %s", socket.getRemoteSocketAddress(), e.toString());
+			} finally {
+				closeQuietly();
+				disconnected(this);
+			}
+		}
+
+		/** Checks that the client knows the secret. */
+		private boolean handshake(DataInputStream in) throws IOException {
+			byte[] nonce = new byte[NONCE_BYTES];
+			RANDOM.nextBytes(nonce);
+			out.write(nonce);
+			out.flush();
+			byte[] answer = new byte[PROOF_BYTES];
+			socket.setSoTimeout(HANDSHAKE_MILLIS);
+			in.readFully(answer);
+			socket.setSoTimeout(0);
+			if (!MessageDigest.isEqual(answer, proof(secret, nonce))) {
+				return false;
+			}
+			out.writeByte(WELCOME);
+			out.flush();
+			return true;
+		}
+
+		/** Sends a response; a client that cannot take it is dropped. */
+		synchronized void send(byte status, int id, byte[] value) {
+			try {
+				out.writeByte(status);
+				out.writeInt(id);
+				if (status == HIT) {
+					out.writeInt(value.length);
+					out.write(value);
+				}
+				out.flush();
+			} catch (IOException e) {
+				closeQuietly();
+			}
+		}
+
+		void closeQuietly() {
+			try {
+				socket.close();
+			} catch (IOException ignored) {
+				// already gone
+			}
+		}
+	}
+
+	private final ServerSocket server;
+	private final String secret;
+	private final long leaseMillis;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true);
+	private final Map<String, Lease> leases = new HashMap<String, Lease>();
+	private final ScheduledExecutorService sweeper;
+	private long bytes;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong puts = new AtomicLong();
+
+	/**
+	 * Starts a server.
+	 *
+	 * @param address  address to listen on, port 0 for any free one
+	 * @param lease    how long a client may take to fetch a key it leased
+	 * @param maxBytes most value bytes kept
+	 * @param secret   what clients prove they know, empty for none
+	 * @throws IOException if the port cannot be bound
+	 */
+	public SharedCacheServer(InetSocketAddress address, Duration lease, long maxBytes, String secret)
+			throws IOException {
+		if (secret.isEmpty() && !address.getAddress().isLoopbackAddress()) {
+			throw new IllegalArgumentException("listening on " + address + " needs a shared.secret");
+		}
+		this.secret = secret;
+		this.leaseMillis = lease.toMillis();
+		this.maxBytes = maxBytes;
+		this.server = new ServerSocket();
+		this.server.bind(address);
+		this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "shared-cache-sweeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.sweeper.scheduleWithFixedDelay(this::expireLeases, 1, 1, TimeUnit.SECONDS);
+		Thread acceptor = new Thread(this::accept, "shared-cache-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		Metrics.gauge("shared.server.hits", hits::get);
+		Metrics.gauge("shared.server.misses", misses::get);
+		Metrics.gauge("shared.server.coalesced", coalesced::get);
+		Metrics.gauge("shared.server.puts", puts::get);
+		Metrics.gauge("shared.server.entries", this::size);
+		LOG.info("Shared cache listening on %s", address());
+	}
+
+	/**
+	 * Starts a server on a free loopback port of this JVM, the stand-in for a
+	 * shared cache process in tests and single machine runs.
+	 *
+	 * @param config
+	 * @return SharedCacheServer
+	 */
+	public static SharedCacheServer startLocal(AppConfig config) {
+		try {
+			return new SharedCacheServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+					config.sharedLease(), config.sharedMaxBytes(), config.sharedSecret());
+		} catch (IOException ioe) {
+			throw new IllegalStateException("Could not start the local shared cache", ioe);
+		}
+	}
+
+	/**
+	 * Runs a server on {@code shared.port} of {@code shared.bind} until the JVM
+	 * is stopped.
+	 *
+	 * @param args unused
+	 * @throws IOException          if the port cannot be bound
+	 * @throws InterruptedException when stopped
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		AppConfig config = new AppConfig(new File("resources/config.properties"));
+		InetAddress bind = InetAddress.getByName(config.sharedBind());
+		SharedCacheServer server = new SharedCacheServer(
+				new InetSocketAddress(bind, config.getInt("shared.port", DEFAULT_PORT)), config.sharedLease(),
+				config.sharedMaxBytes(), config.sharedSecret());
+		String host = bind.isAnyLocalAddress() ? InetAddress.getLocalHost().getHostName() : bind.getHostAddress();
+		System.out.println("-Dcs1302.api.shared.cache=" + host + ":" + server.getPort());
+		Log.flush();
+		Thread.currentThread().join(); // the server threads are daemons
+	} // main
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of requests answered with a value another client
+	 * fetched while they waited.
+	 *
+	 * @return long
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	@Override
+	public void close() {
+		sweeper.shutdownNow();
+		try {
+			server.close();
+		} catch (IOException ignored) {
+			// closing anyway
+		}
+	}
+
+	/**
+	 * Returns the answer to {@code nonce} of a client knowing {@code secret}.
+	 *
+	 * @param secret
+	 * @param nonce
+	 * @return byte[]
+	 */
+	static byte[] proof(String secret, byte[] nonce) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			// prefixed, as an empty key is not a key
+			byte[] key = ("cs1302.api.shared:" + secret).getBytes(StandardCharsets.UTF_8);
+			mac.init(new SecretKeySpec(key, "HmacSHA256"));
+			return mac.doFinal(nonce);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 is part of every JDK", e);
+		}
+	}
+
+	private String address() {
+		return server.getInetAddress().getHostAddress() + ":" + server.getLocalPort();
+	}
+
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				Thread reader = new Thread(new Connection(socket), "shared-cache-client");
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				if (!server.isClosed()) {
+					LOG.warn("Shared cache accept failed: %s", e.toString());
+				}
+			}
+		}
+	}
+
+	private void get(Connection connection, int id, String key) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry != null && entry.expires <= System.currentTimeMillis()) {
+				remove(key);
+				entry = null;
+			}
+			if (entry == null) {
+				Lease lease = leases.get(key);
+				if (lease != null) {
+					lease.waiters.add(new Waiter(connection, id)); // answered by the put
+					return;
+				}
+				lease = new Lease();
+				lease.holder = connection;
+				lease.expires = System.currentTimeMillis() + leaseMillis;
+				leases.put(key, lease);
+			}
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			connection.send(LEASE, id, null);
+		} else {
+			hits.incrementAndGet();
+			connection.send(HIT, id, entry.value);
+		}
+	}
+
+	private void put(String key, byte[] value, long ttlMillis) {
+		puts.incrementAndGet();
+		Lease lease;
+		synchronized (this) {
+			if (ttlMillis > 0 && value.length <= maxBytes) {
+				remove(key);
+				entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+				bytes += value.length;
+				Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+				while (bytes > maxBytes && eldest.hasNext()) {
+					bytes -= eldest.next().getValue().value.length;
+					eldest.remove();
+				}
+			}
+			lease = leases.remove(key);
+		}
+		if (lease != null) {
+			for (Waiter waiter : lease.waiters) {
+				coalesced.incrementAndGet();
+				waiter.connection.send(HIT, waiter.id, value);
+			}
+		}
+	}
+
+	private void release(Connection connection, String key) {
+		Waiter next;
+		synchronized (this) {
+			Lease lease = leases.get(key);
+			if (lease == null || lease.holder != connection) {
+				return;
+			}
+			next = handOver(key, lease);
+		}
+		if (next != null) {
+			next.connection.send(LEASE, next.id, null);
+		}
+	}
+
+	/** Gives a lease to its next waiter, or drops it; returns who to tell. */
+	private Waiter handOver(String key, Lease lease) {
+		Waiter next = lease.waiters.poll();
+		if (next == null) {
+			leases.remove(key);
+		} else {
+			lease.holder = next.connection;
+			lease.expires = System.currentTimeMillis() + leaseMillis;
+		}
+		return next;
+	}
+
+	private void expireLeases() {
+		Map<String, Waiter> handed = new HashMap<String, Waiter>();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			for (Map.Entry<String, Lease> lease : new HashMap<String, Lease>(leases).entrySet()) {
+				if (lease.getValue().expires <= now) {
+					LOG.debug("Lease of %s expired", lease.getKey());
+					Waiter next = handOver(lease.getKey(), lease.getValue());
+					if (next != null) {
+						handed.put(lease.getKey(), next);
+					}
+				}
+			}
+		}
+		handed.values().forEach(next -> next.connection.send(LEASE, next.id, null));
+	}
+
+	private void disconnected(Connection connection) {
+		Map<String, Waiter> handed = new HashMap<String, Waiter>();
+		synchronized (this) {
+			for (Map.Entry<String, Lease> lease : new HashMap<String, Lease>(leases).entrySet()) {
+				lease.getValue().waiters.removeIf(waiter -> waiter.connection == connection);
+				if (lease.getValue().holder == connection) {
+					Waiter next = handOver(lease.getKey(), lease.getValue());
+					if (next != null) {
+						handed.put(lease.getKey(), next);
+					}
+				}
+			}
+		}
+		handed.values().forEach(next -> next.connection.send(LEASE, next.id, null));
+	}
+
+	private void remove(String key) {
+		Entry old = entries.remove(key);
+		if (old != null) {
+			bytes -= old.value.length;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package cs1302.api;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * @author Shivam Mishra
+ * Collapses concurrent calls for the same key into one. The first caller for a
+ * key runs the call; everyone who asks for that key before it completes gets the
+ * same future, and so the same parsed result, instead of starting another HTTP
+ * exchange. Once the call completes the key is forgotten, caching finished
+ * results is left to the caller.
+ *
+ * @param <K> key type
+ * @param <V> result type
+ */
+public class SingleFlight<K, V> {
+
+	private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+	/**
+	 * Returns the in flight result for {@code key}, or starts {@code call} if
+	 * there is none. The call runs on the calling thread, so a blocking call
+	 * blocks only its first caller; the others wait on the returned future.
+	 *
+	 * @param key
+	 * @param call
+	 * @return CompletableFuture<V>
+	 */
+	public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+		CompletableFuture<V> created = new CompletableFuture<V>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+		if (existing != null) {
+			return existing;
+		}
+		created.whenComplete((value, error) -> inFlight.remove(key, created));
+		try {
+			call.get().whenComplete((value, error) -> {
+				if (error != null) {
+					created.completeExceptionally(error);
+				} else {
+					created.complete(value);
+				}
+			});
+		} catch (RuntimeException e) {
+			created.completeExceptionally(e);
+		}
+		return created;
+	}
+
+	/**
+	 * Returns the number of keys currently in flight.
+	 *
+	 * @return int
+	 */
+	public int size() {
+		return inFlight.size();
+	}
+}
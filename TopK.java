@@ -0,0 +1,157 @@
+package cs1302.api;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Shivam Mishra
+ * The {@code k} best scored ids of a stream, in memory bounded by {@code k}
+ * however long the stream is. Ids are kept in a min-heap on their score, so
+ * each offer costs {@code O(log k)}: a new id better than the worst kept one
+ * replaces it, and an id already kept is moved to its new place. Ties go to
+ * the lower id, i.e. the one seen first when ids count up.
+ *
+ * <p>
+ * Scores that only grow, such as ratings arriving for tracks that had none,
+ * keep the result exact. When a kept id's score drops after others were
+ * dropped, one of those could now belong in the top {@code k};
+ * {@link #offer} then returns {@code false} so the caller can rebuild from
+ * the full data. Not thread safe.
+ */
+public class TopK {
+
+	private final int k;
+	private final int[] ids;
+	private final int[] scores;
+	private final Map<Integer, Integer> slots = new HashMap<Integer, Integer>(); // id to heap slot
+	private int size;
+	private boolean evicted; // some id was turned away or dropped
+
+	/**
+	 * Constructs a {@code TopK} keeping the {@code k} best ids.
+	 *
+	 * @param k
+	 */
+	public TopK(int k) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive");
+		}
+		this.k = k;
+		this.ids = new int[k];
+		this.scores = new int[k];
+	}
+
+	/**
+	 * Offers the current score of an id, adding it, moving it if it is kept
+	 * already, or turning it away if it does not make the top {@code k}.
+	 *
+	 * @param id
+	 * @param score
+	 * @return {@code false} if the top {@code k} may no longer be exact
+	 */
+	public boolean offer(int id, int score) {
+		Integer slot = slots.get(id);
+		if (slot != null) {
+			int old = scores[slot];
+			scores[slot] = score;
+			if (score < old) {
+				siftUp(slot); // toward the root, the worst kept
+				return !evicted;
+			}
+			siftDown(slot);
+			return true;
+		}
+		if (size < k) {
+			ids[size] = id;
+			scores[size] = score;
+			slots.put(id, size);
+			siftUp(size++);
+			return true;
+		}
+		evicted = true;
+		if (!worse(id, score, ids[0], scores[0])) {
+			slots.remove(ids[0]);
+			ids[0] = id;
+			scores[0] = score;
+			slots.put(id, 0);
+			siftDown(0);
+		}
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int id) {
+		return slots.containsKey(id);
+	}
+
+	/**
+	 * Returns the kept ids, best first.
+	 *
+	 * @return int[]
+	 */
+	public int[] ids() {
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> a.equals(b) ? 0 : worse(ids[a], scores[a], ids[b], scores[b]) ? 1 : -1);
+		int[] best = new int[size];
+		for (int i = 0; i < size; i++) {
+			best[i] = ids[order[i]];
+		}
+		return best;
+	}
+
+	/** Empties the structure, e.g. before rebuilding it. */
+	public void clear() {
+		slots.clear();
+		size = 0;
+		evicted = false;
+	}
+
+	private static boolean worse(int id, int score, int otherId, int otherScore) {
+		return score < otherScore || score == otherScore && id > otherId;
+	}
+
+	private void siftUp(int slot) {
+		while (slot > 0) {
+			int parent = (slot - 1) / 2;
+			if (!worse(ids[slot], scores[slot], ids[parent], scores[parent])) {
+				return;
+			}
+			swap(slot, parent);
+			slot = parent;
+		}
+	}
+
+	private void siftDown(int slot) {
+		while (true) {
+			int worst = slot;
+			for (int child = 2 * slot + 1; child <= 2 * slot + 2 && child < size; child++) {
+				if (worse(ids[child], scores[child], ids[worst], scores[worst])) {
+					worst = child;
+				}
+			}
+			if (worst == slot) {
+				return;
+			}
+			swap(slot, worst);
+			slot = worst;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int id = ids[a];
+		int score = scores[a];
+		ids[a] = ids[b];
+		scores[a] = scores[b];
+		ids[b] = id;
+		scores[b] = score;
+		slots.put(ids[a], a);
+		slots.put(ids[b], b);
+	}
+}
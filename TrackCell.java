@@ -0,0 +1,169 @@
+package cs1302.api;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import cs1302.api.MusixMatchApi.Track;
+import cs1302.api.OpenLibrarySearchApi.OpenLibraryDoc;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.ListCell;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.Text;
+
+/**
+ * @author Shivam Mishra
+ * Recycled cell of the track list. The node tree is built once per cell, and
+ * {@link #updateItem} only swaps the text, artwork and rating shown, so the
+ * number of nodes stays fixed however many results the list holds.
+ */
+public class TrackCell extends ListCell<TrackRow> {
+
+	private final HBox content = new HBox(5);
+	private final ImageView img = new ImageView();
+	private final Text trackName = new Text();
+	private final Text artistName = new Text();
+	private final Text releaseDate = new Text();
+	private final Text ratingText = new Text();
+	private final Text booksText = new Text();
+	private final Button openPopupButton = new Button("See Lyrics");
+	private final InvalidationListener ratingListener = observable -> showRating();
+	private final InvalidationListener booksListener = observable -> showBooks();
+	private final IntConsumer onShown;
+	private TrackRow shown;
+
+	/**
+	 * Constructs a {@code TrackCell}.
+	 *
+	 * @param onLyrics called with the row whose "See Lyrics" button was clicked
+	 * @param onShown  called with the index of each row the cell starts showing
+	 */
+	public TrackCell(Consumer<TrackRow> onLyrics, IntConsumer onShown) {
+		this.onShown = onShown;
+		VBox detailBox = new VBox(5);
+		VBox lyricsBox = new VBox(5);
+		HBox.setHgrow(content, Priority.ALWAYS);
+		detailBox.setAlignment(Pos.CENTER_LEFT);
+		lyricsBox.setAlignment(Pos.CENTER_RIGHT);
+		trackName.setFont(Font.font("Helvetica", FontWeight.BOLD, 20));
+		artistName.setFont(Font.font("Helvetica", FontWeight.MEDIUM, 20));
+		releaseDate.setFont(Font.font("Helvetica", FontWeight.MEDIUM, 20));
+		ratingText.setFont(Font.font("Helvetica", FontWeight.MEDIUM, 20));
+		detailBox.setMaxWidth(400);
+		trackName.setWrappingWidth(330);
+		artistName.setWrappingWidth(330);
+		releaseDate.setWrappingWidth(330);
+		booksText.setFont(Font.font("Helvetica", FontWeight.NORMAL, 14));
+		booksText.setWrappingWidth(330);
+		booksText.setManaged(false); // takes no room while there are no books
+		img.setFitWidth(128);
+		img.setFitHeight(150);
+		openPopupButton.setOnAction(event -> {
+			if (shown != null && shown.getTrack() != null) {
+				onLyrics.accept(shown);
+			}
+		});
+		detailBox.getChildren().addAll(trackName, artistName, releaseDate, booksText);
+		lyricsBox.getChildren().addAll(ratingText, openPopupButton);
+		content.getChildren().addAll(img, detailBox, lyricsBox);
+	}
+
+	@Override
+	protected void updateItem(TrackRow row, boolean empty) {
+		super.updateItem(row, empty);
+		if (shown != null) {
+			shown.resolvedProperty().removeListener(ratingListener);
+			shown.booksProperty().removeListener(booksListener);
+		}
+		TrackRow previous = shown;
+		shown = empty ? null : row;
+		if (shown == null) {
+			img.setImage(null);
+			setGraphic(null);
+			return;
+		}
+		trackName.setText("Track :" + row.getResult().trackName);
+		artistName.setText("Artist :" + row.getResult().artistName);
+		releaseDate.setText("Released : " + row.getReleaseText());
+		if (row != previous) {
+			showArtwork(row);
+		}
+		row.resolvedProperty().addListener(ratingListener);
+		row.booksProperty().addListener(booksListener);
+		showRating();
+		showBooks();
+		setGraphic(content);
+		onShown.accept(getIndex());
+	}
+
+	/**
+	 * Shows the artwork of a row, right away when it is cached and otherwise once
+	 * it has loaded, unless the cell has been recycled for another row by then.
+	 */
+	private void showArtwork(TrackRow row) {
+		String url = row.getResult().artworkUrl100;
+		Image cached = ApiApp.ARTWORK_CACHE.getIfCached(url);
+		img.setImage(cached);
+		if (cached == null && url != null) {
+			ApiApp.ARTWORK_CACHE.load(url).thenAccept(image -> Platform.runLater(() -> {
+				if (shown == row) {
+					img.setImage(image);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Shows the rating of the current row, or a pending marker while its lookup is
+	 * still in flight.
+	 */
+	private void showRating() {
+		Track track = shown == null ? null : shown.getTrack();
+		if (shown == null || !shown.isResolved()) {
+			ratingText.setText("Rating  :...");
+		} else if (track == null) {
+			ratingText.setText("Rating  :N/A");
+		} else {
+			ratingText.setText("Rating  :" + track.track_rating + "/100");
+		}
+		openPopupButton.setDisable(track == null);
+		if (track != null) {
+			ApiApp.LYRICS.prefetch(track); // on screen, so likely to be opened
+		}
+	}
+
+	/**
+	 * Shows the books of the current row under its details, up to three.
+	 */
+	private void showBooks() {
+		List<OpenLibraryDoc> books = shown == null ? null : shown.getBooks();
+		boolean any = books != null && !books.isEmpty();
+		booksText.setManaged(any);
+		booksText.setVisible(any);
+		if (!any) {
+			booksText.setText("");
+			return;
+		}
+		StringBuilder text = new StringBuilder("Books :");
+		for (int i = 0; i < books.size() && i < 3; i++) {
+			OpenLibraryDoc book = books.get(i);
+			text.append(i == 0 ? " " : "; ").append(book.title);
+			if (book.author_name != null && book.author_name.length > 0) {
+				text.append(" by ").append(book.author_name[0]);
+			}
+			if (book.first_publish_year > 0) {
+				text.append(" (").append(book.first_publish_year).append(')');
+			}
+		}
+		booksText.setText(text.toString());
+	}
+}
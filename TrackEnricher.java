@@ -0,0 +1,196 @@
+package cs1302.api;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cs1302.api.ITunesApi.ItunesResult;
+import cs1302.api.MusixMatchApi.Track;
+
+/**
+ * @author Shivam Mishra
+ * Looks up the musixmatch rating of every iTunes result concurrently. All track
+ * search requests are sent with {@code sendAsync}, at most {@code maxConcurrency}
+ * of them at a time, so a full result list takes about as long as the slowest
+ * single request instead of the sum of all of them.
+ */
+public class TrackEnricher {
+
+	/**
+	 * Receives progress updates as the lookups complete. Calls may come from any
+	 * thread.
+	 */
+	public interface ProgressListener {
+		void progress(int completed, int total);
+	}
+
+	/**
+	 * Receives each musixmatch track as soon as its lookup completes, so callers
+	 * can show ratings while the rest of the batch is still in flight. Calls may
+	 * come from any thread.
+	 */
+	public interface TrackListener {
+		void trackLoaded(int index, Track track);
+	}
+
+	private static final Log LOG = Log.get(TrackEnricher.class);
+
+	private final MusixMatchApi mma;
+	private final int maxConcurrency;
+	private final Duration requestTimeout;
+	private final Duration batchTimeout;
+
+	/**
+	 * Constructs a {@code TrackEnricher} with the limits currently configured in
+	 * {@link AppConfig}.
+	 *
+	 * @param mma
+	 */
+	public TrackEnricher(MusixMatchApi mma) {
+		this(mma, ApiApp.CONFIG.enrichConcurrency(), ApiApp.CONFIG.enrichRequestTimeout(),
+				ApiApp.CONFIG.enrichBatchTimeout());
+	}
+
+	/**
+	 * Constructs a {@code TrackEnricher}.
+	 *
+	 * @param mma            api used to build and send the track search requests
+	 * @param maxConcurrency maximum number of requests in flight at once
+	 * @param requestTimeout timeout for each single request
+	 * @param batchTimeout   timeout for the whole batch
+	 */
+	public TrackEnricher(MusixMatchApi mma, int maxConcurrency, Duration requestTimeout, Duration batchTimeout) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+		}
+		this.mma = mma;
+		this.maxConcurrency = maxConcurrency;
+		this.requestTimeout = requestTimeout;
+		this.batchTimeout = batchTimeout;
+	}
+
+	/**
+	 * Looks up the musixmatch track of every result. The returned array is aligned
+	 * with {@code results}; an element is {@code null} when the track was not
+	 * found, the request failed, or it did not finish within the batch timeout.
+	 *
+	 * @param results  iTunes results to enrich
+	 * @param listener notified each time a lookup completes, may be {@code null}
+	 * @return Track[]
+	 * @throws InterruptedException if interrupted while waiting for the batch
+	 */
+	public Track[] enrich(List<ItunesResult> results, ProgressListener listener) throws InterruptedException {
+		return enrich(results, null, listener);
+	}
+
+	/**
+	 * Same as {@link #enrich(List, ProgressListener)}, but also hands every track
+	 * to {@code trackListener} as soon as its own lookup completes. A track that
+	 * was not found, or whose lookup failed, is reported as {@code null}.
+	 *
+	 * @param results       iTunes results to enrich
+	 * @param trackListener notified with each looked up track, may be {@code null}
+	 * @param listener      notified each time a lookup completes, may be
+	 *                      {@code null}
+	 * @return Track[]
+	 * @throws InterruptedException if interrupted while waiting for the batch
+	 */
+	public Track[] enrich(List<ItunesResult> results, TrackListener trackListener, ProgressListener listener)
+			throws InterruptedException {
+		return enrich(results, trackListener, listener, null);
+	}
+
+	/**
+	 * Same as {@link #enrich(List, TrackListener, ProgressListener)}, but also
+	 * tells the lookups that failed from the tracks that were not found: the
+	 * index of every lookup that failed, was refused or did not finish within the
+	 * batch timeout is set in {@code failed}. Those tracks are worth asking for
+	 * again; a {@code null} track whose index is clear is not known to musixmatch.
+	 *
+	 * @param results       iTunes results to enrich
+	 * @param trackListener notified with each looked up track, may be {@code null}
+	 * @param listener      notified each time a lookup completes, may be
+	 *                      {@code null}
+	 * @param failed        receives the indexes of the failed lookups, may be
+	 *                      {@code null}
+	 * @return Track[]
+	 * @throws InterruptedException if interrupted while waiting for the batch
+	 */
+	public Track[] enrich(List<ItunesResult> results, TrackListener trackListener, ProgressListener listener,
+			BitSet failed) throws InterruptedException {
+		int total = results.size();
+		Track[] tracks = new Track[total];
+		List<CompletableFuture<Track>> futures = new ArrayList<CompletableFuture<Track>>(total);
+		for (int i = 0; i < total; i++) {
+			futures.add(new CompletableFuture<Track>());
+		}
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger completed = new AtomicInteger();
+		for (int i = 0; i < Math.min(maxConcurrency, total); i++) {
+			launchNext(results, futures, next, completed, trackListener, listener);
+		}
+
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(batchTimeout.toMillis(),
+					TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			LOG.info("Batch timeout reached after %s/%s lookups", completed.get(), total);
+		} catch (ExecutionException e) {
+			// individual failures are told apart below
+		} finally {
+			next.set(total); // stop launching, whatever is still pending is dropped
+			for (CompletableFuture<Track> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		for (int i = 0; i < total; i++) {
+			CompletableFuture<Track> future = futures.get(i);
+			boolean found = future.isDone() && !future.isCompletedExceptionally(); // cancelled counts as failed
+			tracks[i] = found ? future.getNow(null) : null;
+			if (!found && failed != null) {
+				failed.set(i);
+			}
+		}
+		return tracks;
+	}
+
+	/**
+	 * Starts the lookup of the next result that is not yet in flight. When the
+	 * lookup completes it starts the one after that, so the number of requests in
+	 * flight never exceeds the number of chains started in {@link #enrich}.
+	 */
+	private void launchNext(List<ItunesResult> results, List<CompletableFuture<Track>> futures, AtomicInteger next,
+			AtomicInteger completed, TrackListener trackListener, ProgressListener listener) {
+		int index = next.getAndIncrement();
+		if (index >= results.size()) {
+			return;
+		}
+		ItunesResult result = results.get(index);
+		CompletableFuture<Track> request;
+		try {
+			request = mma.getTrackAsync(result.trackName, result.artistName, requestTimeout);
+		} catch (RuntimeException e) {
+			request = CompletableFuture.failedFuture(e);
+		}
+		request.whenComplete((found, error) -> {
+			Track track = error == null ? found : null;
+			boolean first = error == null ? futures.get(index).complete(track)
+					: futures.get(index).completeExceptionally(error);
+			if (first && trackListener != null) {
+				trackListener.trackLoaded(index, track);
+			}
+			int done = completed.incrementAndGet();
+			if (listener != null) {
+				listener.progress(done, results.size());
+			}
+			launchNext(results, futures, next, completed, trackListener, listener);
+		});
+	}
+}
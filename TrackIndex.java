@@ -0,0 +1,767 @@
+package cs1302.api;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import cs1302.api.ITunesApi.ItunesResult;
+import cs1302.api.MusixMatchApi.Track;
+
+/**
+ * @author Shivam Mishra
+ * Local full text index over every iTunes result, musixmatch track and lyrics
+ * body fetched so far, so searches can be answered without the network.
+ * Track and artist names are indexed for exact, prefix and fuzzy (one edit)
+ * matches, lyrics for phrase matches. Everything indexed is appended to a log
+ * file, which is read back through a memory mapped buffer at startup to
+ * rebuild the in memory postings. The tracks themselves are held in a
+ * columnar {@link TrackStore}, so a large index costs a fraction of the heap
+ * its results and tracks would as objects; only hits returned are rebuilt.
+ *
+ * <p>
+ * Log records are {@code [type (byte), key (int length, UTF-8), payload (int
+ * length, UTF-8)]}: a result as JSON keyed by track and artist name, a track as
+ * JSON under the same key, or lyrics keyed by {@code commontrack_id}. Only the
+ * process holding the {@code .lock} next to the log writes it; another one
+ * opens the index read only, as the log stood when it started.
+ */
+public class TrackIndex {
+
+	/** A matching track, with its musixmatch track when known. */
+	public static class Hit {
+		public final ItunesResult result;
+		public final Track track;
+		final int score;
+
+		Hit(ItunesResult result, Track track, int score) {
+			this.result = result;
+			this.track = track;
+			this.score = score;
+		}
+	}
+
+	private static final byte RESULT = 1;
+	private static final byte TRACK = 2;
+	private static final byte LYRICS = 3;
+	private static final int EXACT = 3;
+	private static final int PREFIX = 2;
+	private static final int FUZZY = 1;
+	private static final int MAX_EXPANSIONS = 64; // prefix terms looked at per query token
+	private static final int TOP_RATED = 500; // best rated tracks kept up to date as ratings arrive
+	private static final Log LOG = Log.get(TrackIndex.class);
+
+	/** A doc matching a search, before it is rebuilt into a {@link Hit}. */
+	private static class Candidate {
+		final int id;
+		final int score;
+		final int rating;
+
+		Candidate(int id, int score, int rating) {
+			this.id = id;
+			this.score = score;
+			this.rating = rating;
+		}
+	}
+
+	/** Sorted, duplicate free doc ids of one term. */
+	private static class Postings {
+		int[] ids = new int[2];
+		int size;
+
+		void add(int id) {
+			int at = Arrays.binarySearch(ids, 0, size, id);
+			if (at >= 0) {
+				return;
+			}
+			at = -at - 1;
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			System.arraycopy(ids, at, ids, at + 1, size - at);
+			ids[at] = id;
+			size++;
+		}
+	}
+
+	private final File file;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final TrackStore docs = new TrackStore();
+	private final TopK topRated = new TopK(TOP_RATED);
+	private boolean topStale; // a rating dropped, topRated is rebuilt on the next query
+	private final Map<Integer, int[]> lyricsTokens = new HashMap<Integer, int[]>(); // term ids by doc id, once fetched
+	// doc ids by a 64 bit hash of their key, open addressed; a match is checked against the doc in the store
+	private long[] keyHashes = new long[1024];
+	private int[] keyIds = new int[1024]; // doc id + 1, 0 for a free slot
+	private int keyCount;
+	private final Map<Integer, Integer> byCommonTrack = new HashMap<Integer, Integer>();
+	private final TreeMap<String, Postings> nameTerms = new TreeMap<String, Postings>();
+	private final Map<String, List<String>> deletions = new HashMap<String, List<String>>(); // for fuzzy lookups
+	private final Map<String, Integer> lyricsTermIds = new HashMap<String, Integer>();
+	private final List<Postings> lyricsTerms = new ArrayList<Postings>(); // by term id
+	private DataOutputStream log;
+	private ProcessLock writeLock; // null when the log is not ours to write
+
+	private TrackIndex(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Opens the index stored in {@code file}, creating it if needed. If the log
+	 * cannot be read or written, or another process writes it, the index still
+	 * works in memory.
+	 *
+	 * @param file
+	 * @return TrackIndex
+	 */
+	public static TrackIndex open(File file) {
+		TrackIndex index = new TrackIndex(file);
+		long start = System.nanoTime();
+		try {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				parent.mkdirs();
+			}
+			index.writeLock = ProcessLock.tryAcquire(new File(file.getPath() + ".lock"));
+			long valid = index.load();
+			if (index.writeLock == null) {
+				LOG.warn("Track index %s is written by another process, opened read only", file);
+			} else if (file.isFile() && valid < file.length()) {
+				try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+					channel.truncate(valid); // drop a record cut short by a crash
+				}
+			}
+			if (index.writeLock != null) {
+				index.log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+			}
+		} catch (IOException ioe) {
+			LOG.warn("Track index not persisted: %s", ioe.toString());
+		}
+		LOG.info("Track index loaded, %s tracks in %s ms", index.docs.size(), (System.nanoTime() - start) / 1_000_000);
+		return index;
+	}
+
+	/**
+	 * Returns an index that keeps nothing and finds nothing.
+	 *
+	 * @return TrackIndex
+	 */
+	public static TrackIndex disabled() {
+		return new TrackIndex(null);
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return docs.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds search results not indexed yet.
+	 *
+	 * @param results
+	 */
+	public void addResults(List<ItunesResult> results) {
+		if (file == null || results == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			for (ItunesResult result : results) {
+				String key = key(result.trackName, result.artistName);
+				if (key != null && idOf(key) < 0) {
+					addResult(key, result);
+					append(RESULT, key, ApiApp.GSON.toJson(result));
+				}
+			}
+			flush();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Attaches the musixmatch track found for an iTunes track and artist name.
+	 *
+	 * @param trackName
+	 * @param artistName
+	 * @param track
+	 */
+	public void addTrack(String trackName, String artistName, Track track) {
+		if (file == null || track == null) {
+			return;
+		}
+		String key = key(trackName, artistName);
+		lock.writeLock().lock();
+		try {
+			int id = idOf(key);
+			if (id < 0 || docs.sameTrack(id, track)) {
+				return;
+			}
+			attachTrack(id, track);
+			append(TRACK, key, ApiApp.GSON.toJson(track));
+			flush();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Indexes the lyrics of a common track, for the tracks linked to it.
+	 *
+	 * @param commontrackId
+	 * @param lyrics
+	 */
+	public void addLyrics(int commontrackId, String lyrics) {
+		if (file == null || commontrackId == 0 || lyrics == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			Integer id = byCommonTrack.get(commontrackId);
+			if (id == null || lyricsTokens.containsKey(id)) {
+				return;
+			}
+			attachLyrics(id, lyrics);
+			append(LYRICS, Integer.toString(commontrackId), lyrics);
+			flush();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds tracks whose track or artist name matches every word of the query.
+	 * A word matches a name word that is equal to it, starts with it, or is one
+	 * edit away from it (words of 4 or more letters); better matches and higher
+	 * rated tracks come first.
+	 *
+	 * @param query
+	 * @param limit
+	 * @return List<Hit>
+	 */
+	public List<Hit> search(String query, int limit) {
+		List<String> words = tokenize(query);
+		if (file == null || words.isEmpty()) {
+			return Collections.emptyList();
+		}
+		lock.readLock().lock();
+		try {
+			Map<Integer, Integer> scores = null;
+			for (String word : words) {
+				Map<Integer, Integer> matches = matchWord(word);
+				if (scores == null) {
+					scores = matches;
+				} else {
+					Map<Integer, Integer> both = new HashMap<Integer, Integer>();
+					for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+						Integer score = matches.get(entry.getKey());
+						if (score != null) {
+							both.put(entry.getKey(), entry.getValue() + score);
+						}
+					}
+					scores = both;
+				}
+				if (scores.isEmpty()) {
+					return Collections.emptyList();
+				}
+			}
+			List<Candidate> candidates = new ArrayList<Candidate>(scores.size());
+			scores.forEach((id, score) -> candidates.add(new Candidate(id, score, docs.rating(id))));
+			return top(candidates, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds tracks whose lyrics contain the words of {@code phrase} in order.
+	 *
+	 * @param phrase
+	 * @param limit
+	 * @return List<Hit>
+	 */
+	public List<Hit> searchLyrics(String phrase, int limit) {
+		List<String> words = tokenize(phrase);
+		if (file == null || words.isEmpty()) {
+			return Collections.emptyList();
+		}
+		lock.readLock().lock();
+		try {
+			Postings rarest = null;
+			int[] phraseWords = new int[words.size()];
+			for (int i = 0; i < phraseWords.length; i++) {
+				Integer term = lyricsTermIds.get(words.get(i));
+				if (term == null) {
+					return Collections.emptyList();
+				}
+				phraseWords[i] = term;
+				Postings postings = lyricsTerms.get(term);
+				if (rarest == null || postings.size < rarest.size) {
+					rarest = postings;
+				}
+			}
+			List<Candidate> candidates = new ArrayList<Candidate>();
+			for (int i = 0; i < rarest.size; i++) {
+				int id = rarest.ids[i];
+				if (containsPhrase(lyricsTokens.get(id), phraseWords)) {
+					candidates.add(new Candidate(id, EXACT, docs.rating(id)));
+				}
+			}
+			return top(candidates, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the {@code n} best rated tracks of the whole index, higher rated
+	 * and then earlier fetched first. Up to 500 are kept ranked as ratings
+	 * arrive and answer at once; a larger {@code n} ranks every track in memory
+	 * bounded by {@code n}.
+	 *
+	 * @param n
+	 * @return List<Hit>
+	 */
+	public List<Hit> topRated(int n) {
+		if (file == null || n <= 0) {
+			return Collections.emptyList();
+		}
+		if (n > TOP_RATED || topStale) {
+			lock.writeLock().lock(); // a stale topRated is rebuilt in place
+			try {
+				TopK top = n > TOP_RATED ? new TopK(n) : topRated;
+				if (top == topRated) {
+					top.clear();
+					topStale = false;
+				}
+				for (int id = 0; id < docs.size(); id++) {
+					if (docs.hasTrack(id)) {
+						top.offer(id, docs.rating(id));
+					}
+				}
+				return hits(top.ids(), n);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		lock.readLock().lock();
+		try {
+			return hits(topRated.ids(), n);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private List<Hit> hits(int[] ids, int n) {
+		List<Hit> hits = new ArrayList<Hit>(Math.min(n, ids.length));
+		for (int i = 0; i < ids.length && i < n; i++) {
+			hits.add(new Hit(docs.result(ids[i]), docs.track(ids[i]), docs.rating(ids[i])));
+		}
+		return hits;
+	}
+
+	/**
+	 * Flushes and closes the log.
+	 */
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			if (log != null) {
+				log.close();
+				log = null;
+			}
+		} catch (IOException ioe) {
+			LOG.warn("Could not close track index: %s", ioe.toString());
+		} finally {
+			if (writeLock != null) {
+				writeLock.close();
+				writeLock = null;
+			}
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the best score of each doc matching one query word.
+	 */
+	private Map<Integer, Integer> matchWord(String word) {
+		Map<Integer, Integer> matches = new HashMap<Integer, Integer>();
+		Postings exact = nameTerms.get(word);
+		if (exact != null) {
+			score(matches, exact, EXACT);
+		}
+		SortedMap<String, Postings> prefixed = nameTerms.subMap(word, word + Character.MAX_VALUE);
+		int expansions = 0;
+		for (Map.Entry<String, Postings> entry : prefixed.entrySet()) {
+			if (expansions++ >= MAX_EXPANSIONS) {
+				break;
+			}
+			score(matches, entry.getValue(), PREFIX);
+		}
+		if (word.length() >= 4) {
+			for (String term : fuzzyTerms(word)) {
+				score(matches, nameTerms.get(term), FUZZY);
+			}
+		}
+		return matches;
+	}
+
+	private static void score(Map<Integer, Integer> matches, Postings postings, int score) {
+		for (int i = 0; i < postings.size; i++) {
+			matches.merge(postings.ids[i], score, Math::max);
+		}
+	}
+
+	/**
+	 * Returns the indexed terms one insertion, deletion or substitution away
+	 * from {@code word}, found through their single character deletions.
+	 */
+	private Set<String> fuzzyTerms(String word) {
+		Set<String> terms = new HashSet<String>();
+		List<String> variants = deletionsOf(word);
+		variants.add(word);
+		for (String variant : variants) {
+			List<String> candidates = deletions.get(variant);
+			if (candidates != null) {
+				for (String candidate : candidates) {
+					if (!candidate.equals(word) && withinOneEdit(word, candidate)) {
+						terms.add(candidate);
+					}
+				}
+			}
+		}
+		return terms;
+	}
+
+	private void addResult(String key, ItunesResult result) {
+		int id = docs.add(result);
+		putId(key, id);
+		Set<String> words = new HashSet<String>(tokenize(result.trackName));
+		words.addAll(tokenize(result.artistName));
+		for (String word : words) {
+			Postings postings = nameTerms.get(word);
+			if (postings == null) {
+				postings = new Postings();
+				nameTerms.put(word, postings);
+				if (word.length() >= 3) {
+					for (String deletion : deletionsOf(word)) {
+						deletions.computeIfAbsent(deletion, k -> new ArrayList<String>(1)).add(word);
+					}
+					deletions.computeIfAbsent(word, k -> new ArrayList<String>(1)).add(word);
+				}
+			}
+			postings.add(id);
+		}
+	}
+
+	private void attachTrack(int id, Track track) {
+		docs.setTrack(id, track);
+		if (!topRated.offer(id, docs.rating(id))) {
+			topStale = true;
+		}
+		if (track.commontrack_id != 0) {
+			byCommonTrack.put(track.commontrack_id, id);
+		}
+	}
+
+	private void attachLyrics(int id, String lyrics) {
+		List<String> words = tokenize(lyrics);
+		int[] terms = new int[words.size()];
+		for (int i = 0; i < terms.length; i++) {
+			Integer term = lyricsTermIds.get(words.get(i));
+			if (term == null) {
+				term = lyricsTerms.size();
+				lyricsTermIds.put(words.get(i), term);
+				lyricsTerms.add(new Postings());
+			}
+			terms[i] = term;
+			lyricsTerms.get(term).add(id); // once per doc, Postings keeps no duplicates
+		}
+		lyricsTokens.put(id, terms);
+	}
+
+	/**
+	 * Returns the id of the doc indexed under {@code key}, or -1. Docs are found
+	 * by the hash of their key and told apart by the key of their stored names,
+	 * so no key is kept per doc.
+	 */
+	private int idOf(String key) {
+		long hash = hash64(key);
+		int mask = keyIds.length - 1;
+		for (int slot = spread(hash) & mask; keyIds[slot] != 0; slot = (slot + 1) & mask) {
+			int id = keyIds[slot] - 1;
+			if (keyHashes[slot] == hash && key.equals(storedKey(id))) {
+				return id;
+			}
+		}
+		return -1;
+	}
+
+	private void putId(String key, int id) {
+		if ((keyCount + 1) * 2 > keyIds.length) { // at most half full
+			long[] hashes = keyHashes;
+			int[] ids = keyIds;
+			keyHashes = new long[hashes.length * 2];
+			keyIds = new int[ids.length * 2];
+			for (int i = 0; i < ids.length; i++) {
+				if (ids[i] != 0) {
+					place(hashes[i], ids[i]);
+				}
+			}
+		}
+		place(hash64(key), id + 1);
+		keyCount++;
+	}
+
+	private void place(long hash, int storedId) {
+		int mask = keyIds.length - 1;
+		int slot = spread(hash) & mask;
+		while (keyIds[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		keyHashes[slot] = hash;
+		keyIds[slot] = storedId;
+	}
+
+	/** The key of a stored doc; an empty track name is stored as none. */
+	private String storedKey(int id) {
+		String trackName = docs.trackName(id);
+		return key(trackName == null ? "" : trackName, docs.artistName(id));
+	}
+
+	/** FNV-1a over the chars of {@code key}. */
+	private static long hash64(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static int spread(long hash) {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * Replays the log through a memory mapped buffer and returns the length of
+	 * its valid part.
+	 */
+	private long load() throws IOException {
+		if (!file.isFile() || file.length() == 0) {
+			return 0;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			int valid = 0;
+			while (buffer.hasRemaining()) {
+				try {
+					byte type = buffer.get();
+					String key = readString(buffer);
+					String payload = readString(buffer);
+					replay(type, key, payload);
+					valid = buffer.position();
+				} catch (BufferUnderflowException | IllegalArgumentException e) {
+					LOG.warn("Track index log damaged after %s bytes, dropping the rest", valid);
+					break;
+				} catch (RuntimeException e) {
+					valid = buffer.position(); // a record that no longer parses, skip it
+				}
+			}
+			return valid;
+		}
+	}
+
+	private void replay(byte type, String key, String payload) {
+		if (type == RESULT) {
+			if (idOf(key) < 0) {
+				addResult(key, ApiApp.GSON.fromJson(payload, ItunesResult.class));
+			}
+		} else if (type == TRACK) {
+			int id = idOf(key);
+			if (id >= 0) {
+				attachTrack(id, ApiApp.GSON.fromJson(payload, Track.class));
+			}
+		} else if (type == LYRICS) {
+			Integer id = byCommonTrack.get(Integer.parseInt(key));
+			if (id != null) {
+				attachLyrics(id, payload);
+			}
+		} else {
+			throw new IllegalArgumentException("unknown record type " + type);
+		}
+	}
+
+	private static String readString(MappedByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private void append(byte type, String key, String payload) {
+		if (log == null) {
+			return;
+		}
+		try {
+			byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+			byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+			log.writeByte(type);
+			log.writeInt(keyBytes.length);
+			log.write(keyBytes);
+			log.writeInt(payloadBytes.length);
+			log.write(payloadBytes);
+		} catch (IOException ioe) {
+			LOG.warn("Could not append to track index: %s", ioe.toString());
+		}
+	}
+
+	private void flush() {
+		try {
+			if (log != null) {
+				log.flush();
+			}
+		} catch (IOException ioe) {
+			LOG.warn("Could not flush track index: %s", ioe.toString());
+		}
+	}
+
+	private static boolean containsPhrase(int[] words, int[] phrase) {
+		if (words == null) {
+			return false;
+		}
+		for (int start = 0; start + phrase.length <= words.length; start++) {
+			int i = 0;
+			while (i < phrase.length && words[start + i] == phrase[i]) {
+				i++;
+			}
+			if (i == phrase.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sorts candidates by score, then rating, and rebuilds the first
+	 * {@code limit} into hits.
+	 */
+	private List<Hit> top(List<Candidate> candidates, int limit) {
+		candidates.sort((a, b) -> {
+			if (a.score != b.score) {
+				return Integer.compare(b.score, a.score);
+			}
+			return Integer.compare(b.rating, a.rating);
+		});
+		List<Hit> hits = new ArrayList<Hit>(Math.min(limit, candidates.size()));
+		for (int i = 0; i < candidates.size() && i < limit; i++) {
+			Candidate candidate = candidates.get(i);
+			hits.add(new Hit(docs.result(candidate.id), docs.track(candidate.id), candidate.score));
+		}
+		return hits;
+	}
+
+	private static String key(String trackName, String artistName) {
+		if (trackName == null) {
+			return null;
+		}
+		return normalize(trackName) + '\u0000' + normalize(artistName == null ? "" : artistName);
+	}
+
+	private static String normalize(String text) {
+		boolean ascii = true;
+		for (int i = 0; i < text.length() && ascii; i++) {
+			ascii = text.charAt(i) < 0x80;
+		}
+		if (ascii) {
+			return text.toLowerCase(Locale.ROOT).trim(); // nothing to strip, skips the regex on long lyrics
+		}
+		String stripped = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+		return stripped.toLowerCase(Locale.ROOT).trim();
+	}
+
+	/**
+	 * Splits text into lower case words without accents.
+	 */
+	static List<String> tokenize(String text) {
+		List<String> words = new ArrayList<String>();
+		if (text == null) {
+			return words;
+		}
+		String normalized = normalize(text);
+		int start = -1;
+		for (int i = 0; i <= normalized.length(); i++) {
+			boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			} else if (!letter && start >= 0) {
+				words.add(normalized.substring(start, i));
+				start = -1;
+			}
+		}
+		return words;
+	}
+
+	private static List<String> deletionsOf(String word) {
+		List<String> variants = new ArrayList<String>(word.length() + 1);
+		for (int i = 0; i < word.length(); i++) {
+			variants.add(word.substring(0, i) + word.substring(i + 1));
+		}
+		return variants;
+	}
+
+	private static boolean withinOneEdit(String a, String b) {
+		if (Math.abs(a.length() - b.length()) > 1) {
+			return false;
+		}
+		int i = 0;
+		int j = 0;
+		boolean edited = false;
+		while (i < a.length() && j < b.length()) {
+			if (a.charAt(i) == b.charAt(j)) {
+				i++;
+				j++;
+				continue;
+			}
+			if (edited) {
+				return false;
+			}
+			edited = true;
+			if (a.length() > b.length()) {
+				i++;
+			} else if (a.length() < b.length()) {
+				j++;
+			} else {
+				i++;
+				j++;
+			}
+		}
+		return !edited || (i == a.length() && j == b.length());
+	}
+}
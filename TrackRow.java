@@ -0,0 +1,138 @@
+package cs1302.api;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cs1302.api.ITunesApi.ItunesResult;
+import cs1302.api.MusixMatchApi.Track;
+import cs1302.api.OpenLibrarySearchApi.OpenLibraryDoc;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+
+/**
+ * @author Shivam Mishra
+ * Lightweight model of one row of the track list: the iTunes result plus the
+ * musixmatch track once its lookup has completed, and any Open Library books
+ * of the same title. Rows hold no nodes, so the
+ * list can keep thousands of them while only the visible {@link TrackCell}s
+ * exist.
+ */
+public class TrackRow {
+
+	private static final AtomicInteger ARRIVALS = new AtomicInteger();
+
+	private final ItunesResult result;
+	private final int arrival = ARRIVALS.getAndIncrement(); // the order rows were found in
+	private int releaseDay = Integer.MAX_VALUE; // epoch day, read from the result on first use
+	private String releaseText; // formatted on first display
+	private final ReadOnlyObjectWrapper<Track> track = new ReadOnlyObjectWrapper<Track>(this, "track");
+	private final ReadOnlyBooleanWrapper resolved = new ReadOnlyBooleanWrapper(this, "resolved", false);
+	private final ReadOnlyObjectWrapper<List<OpenLibraryDoc>> books = new ReadOnlyObjectWrapper<List<OpenLibraryDoc>>(
+			this, "books");
+
+	/**
+	 * Constructs a {@code TrackRow} whose rating is still pending.
+	 *
+	 * @param result
+	 */
+	public TrackRow(ItunesResult result) {
+		this.result = result;
+	}
+
+	public ItunesResult getResult() {
+		return result;
+	}
+
+	/**
+	 * Returns the release date in display form, formatting it the first time it
+	 * is asked for.
+	 *
+	 * @return String
+	 */
+	public String getReleaseText() {
+		if (releaseText == null) {
+			releaseText = TrackStore.formatDay(getReleaseDay());
+		}
+		return releaseText;
+	}
+
+	/**
+	 * Returns the release date as an epoch day, or {@link TrackStore#NO_DATE}.
+	 *
+	 * @return int
+	 */
+	public int getReleaseDay() {
+		if (releaseDay == Integer.MAX_VALUE) {
+			releaseDay = TrackStore.epochDay(result.releaseDate);
+		}
+		return releaseDay;
+	}
+
+	/**
+	 * Returns the place of the row among all rows found, earlier rows being
+	 * lower; the order of a search's results as their source ranked them.
+	 *
+	 * @return int
+	 */
+	public int getArrival() {
+		return arrival;
+	}
+
+	/**
+	 * Records the outcome of the musixmatch lookup. Must be called on the JavaFX
+	 * application thread.
+	 *
+	 * @param found the musixmatch track, or {@code null} when not found
+	 */
+	public void resolve(Track found) {
+		track.set(found);
+		resolved.set(true);
+	}
+
+	public Track getTrack() {
+		return track.get();
+	}
+
+	/**
+	 * Returns the musixmatch rating, or {@link TrackStore#NO_RATING} while it is
+	 * pending or when the track was not found.
+	 *
+	 * @return int
+	 */
+	public int getRating() {
+		Track found = track.get();
+		return found == null ? TrackStore.NO_RATING : found.track_rating;
+	}
+
+	public ReadOnlyObjectProperty<Track> trackProperty() {
+		return track.getReadOnlyProperty();
+	}
+
+	public boolean isResolved() {
+		return resolved.get();
+	}
+
+	public ReadOnlyBooleanProperty resolvedProperty() {
+		return resolved.getReadOnlyProperty();
+	}
+
+	/**
+	 * Records the books matching the track. Must be called on the JavaFX
+	 * application thread.
+	 *
+	 * @param found
+	 */
+	public void setBooks(List<OpenLibraryDoc> found) {
+		books.set(found);
+	}
+
+	public List<OpenLibraryDoc> getBooks() {
+		return books.get();
+	}
+
+	public ReadOnlyObjectProperty<List<OpenLibraryDoc>> booksProperty() {
+		return books.getReadOnlyProperty();
+	}
+}
@@ -0,0 +1,393 @@
+package cs1302.api;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import cs1302.api.ITunesApi.ItunesResult;
+import cs1302.api.MusixMatchApi.Track;
+
+/**
+ * @author Shivam Mishra
+ * Compact columnar store of iTunes results and their musixmatch tracks, for
+ * collections of tens of thousands of tracks such as the {@link TrackIndex}.
+ * A track is a row id instead of an {@code ItunesResult} and a {@code Track}
+ * with a {@code String} per field:
+ * <ul>
+ * <li>artist, country, currency, kind and wrapper type are codes into
+ * per column dictionaries, so each distinct value is held once;</li>
+ * <li>track names and the varying middle of artwork URLs are UTF-8 bytes in one
+ * shared array, their common host prefix and file name are dictionary
+ * codes;</li>
+ * <li>release dates are epoch days, ratings bytes and the other musixmatch
+ * fields {@code int} columns.</li>
+ * </ul>
+ * Results and tracks are rebuilt on demand, and dates are formatted only when
+ * shown. Not thread safe; callers lock around it.
+ */
+public class TrackStore {
+
+	/** Release day of a track without a readable date. */
+	public static final int NO_DATE = Integer.MIN_VALUE;
+	/** Rating of a track without a musixmatch track. */
+	public static final int NO_RATING = -1;
+
+	private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("dd MMM yyyy", Locale.ENGLISH);
+	private static final byte SEPARATOR = 0; // between a track name and its artwork, in neither
+
+	/** Distinct strings of one column, code 0 being {@code null}. */
+	static final class Dictionary {
+		private final Map<String, Integer> codes = new HashMap<String, Integer>();
+		private final List<String> values = new ArrayList<String>();
+		private final int limit;
+
+		Dictionary(int limit) {
+			this.limit = limit;
+			values.add(null);
+		}
+
+		int code(String value) {
+			if (value == null) {
+				return 0;
+			}
+			Integer code = codes.get(value);
+			if (code == null) {
+				code = values.size();
+				if (code > limit) {
+					throw new IllegalStateException("more than " + limit + " distinct values");
+				}
+				values.add(value);
+				codes.put(value, code);
+			}
+			return code;
+		}
+
+		String get(int code) {
+			return values.get(code);
+		}
+	}
+
+	private final Dictionary artists = new Dictionary(Integer.MAX_VALUE);
+	private final Dictionary countries = new Dictionary(Character.MAX_VALUE); // the small ones fit a char
+	private final Dictionary currencies = new Dictionary(Character.MAX_VALUE);
+	private final Dictionary kinds = new Dictionary(Character.MAX_VALUE);
+	private final Dictionary wrapperTypes = new Dictionary(Character.MAX_VALUE);
+	private final Dictionary artworkHosts = new Dictionary(Character.MAX_VALUE);
+	private final Dictionary artworkFiles = new Dictionary(Character.MAX_VALUE);
+
+	private int size;
+	private byte[] bytes = new byte[4096];
+	private int bytesUsed;
+	private int[] offsets = new int[64]; // start of each row's bytes
+	private int[] artist = new int[64];
+	private char[] country = new char[64];
+	private char[] currency = new char[64];
+	private char[] kind = new char[64];
+	private char[] wrapperType = new char[64];
+	private char[] artworkHost = new char[64]; // 0 when there is no artwork
+	private char[] artworkFile = new char[64];
+	private int[] releaseDay = new int[64];
+	private byte[] rating = new byte[64]; // 0 to 100
+	private int[] trackId = new int[64];
+	private int[] commonTrackId = new int[64];
+	private int[] artistId = new int[64];
+	private int[] trackArtist = new int[64]; // musixmatch artist name, in the artist dictionary
+	private byte[] hasLyrics = new byte[64];
+	private String[] trackTitle = new String[64]; // musixmatch track name, only when it differs from iTunes'
+
+	/**
+	 * Adds a result and returns its row id; ids count up from 0.
+	 *
+	 * @param result
+	 * @return int
+	 */
+	public int add(ItunesResult result) {
+		// codes first, a dictionary that is full throws before a row is claimed
+		int artistCode = artists.code(result.artistName);
+		char countryCode = (char) countries.code(result.country);
+		char currencyCode = (char) currencies.code(result.currency);
+		char kindCode = (char) kinds.code(result.kind);
+		char wrapperTypeCode = (char) wrapperTypes.code(result.wrapperType);
+		String url = result.artworkUrl100;
+		int hostEnd = 0;
+		int fileStart = 0;
+		char hostCode = 0;
+		char fileCode = 0;
+		if (url != null) {
+			hostEnd = nthIndexOf(url, '/', 5) + 1; // https://host/image/thumb/
+			fileStart = url.lastIndexOf('/') + 1;
+			if (hostEnd <= 0 || fileStart <= hostEnd) {
+				hostEnd = 0;
+				fileStart = url.length();
+			}
+			hostCode = (char) artworkHosts.code(url.substring(0, hostEnd)); // "" is a code too
+			fileCode = (char) artworkFiles.code(url.substring(fileStart));
+		}
+		if (size == offsets.length) {
+			grow();
+		}
+		int id = size++;
+		offsets[id] = bytesUsed;
+		artist[id] = artistCode;
+		country[id] = countryCode;
+		currency[id] = currencyCode;
+		kind[id] = kindCode;
+		wrapperType[id] = wrapperTypeCode;
+		releaseDay[id] = epochDay(result.releaseDate);
+		rating[id] = (byte) NO_RATING;
+		putString(result.trackName);
+		putByte(SEPARATOR);
+		artworkHost[id] = hostCode;
+		artworkFile[id] = fileCode;
+		if (url != null) {
+			putString(url.substring(hostEnd, fileStart));
+		}
+		return id;
+	}
+
+	/**
+	 * Attaches the musixmatch track of a row, replacing any before.
+	 *
+	 * @param id
+	 * @param track
+	 */
+	public void setTrack(int id, Track track) {
+		checkId(id);
+		int artistCode = artists.code(track.artist_name); // before the row is touched
+		rating[id] = (byte) Math.max(0, Math.min(Byte.MAX_VALUE, track.track_rating));
+		trackId[id] = track.track_id;
+		commonTrackId[id] = track.commontrack_id;
+		artistId[id] = track.artist_id;
+		hasLyrics[id] = (byte) track.has_lyrics;
+		trackArtist[id] = artistCode;
+		String name = trackName(id);
+		trackTitle[id] = name != null && name.equals(track.track_name) ? null : track.track_name;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the track name of a row without rebuilding its result; an empty
+	 * name comes back as {@code null}, like a missing one.
+	 *
+	 * @param id
+	 * @return String
+	 */
+	public String trackName(int id) {
+		checkId(id);
+		int start = offsets[id];
+		int end = separatorAfter(start);
+		return end == start ? null : decode(start, end);
+	}
+
+	public String artistName(int id) {
+		checkId(id);
+		return artists.get(artist[id]);
+	}
+
+	/**
+	 * Returns the release date of a row as an epoch day, or {@link #NO_DATE}.
+	 *
+	 * @param id
+	 * @return int
+	 */
+	public int releaseDay(int id) {
+		checkId(id);
+		return releaseDay[id];
+	}
+
+	/**
+	 * Returns the musixmatch rating of a row, or {@link #NO_RATING} if it has no
+	 * musixmatch track.
+	 *
+	 * @param id
+	 * @return int
+	 */
+	public int rating(int id) {
+		checkId(id);
+		return rating[id];
+	}
+
+	public boolean hasTrack(int id) {
+		return rating(id) != NO_RATING;
+	}
+
+	public int commonTrackId(int id) {
+		checkId(id);
+		return commonTrackId[id];
+	}
+
+	/**
+	 * Tells whether a row already holds this musixmatch track, with the same
+	 * rating.
+	 *
+	 * @param id
+	 * @param track
+	 * @return boolean
+	 */
+	public boolean sameTrack(int id, Track track) {
+		return hasTrack(id) && trackId[id] == track.track_id && rating[id] == track.track_rating
+				&& commonTrackId[id] == track.commontrack_id;
+	}
+
+	/**
+	 * Rebuilds the iTunes result of a row. The release date comes back as the
+	 * start of its day in UTC, which is all that is shown of it.
+	 *
+	 * @param id
+	 * @return ItunesResult
+	 */
+	public ItunesResult result(int id) {
+		ItunesResult result = new ItunesResult();
+		result.trackName = trackName(id);
+		result.artistName = artists.get(artist[id]);
+		result.country = countries.get(country[id]);
+		result.currency = currencies.get(currency[id]);
+		result.kind = kinds.get(kind[id]);
+		result.wrapperType = wrapperTypes.get(wrapperType[id]);
+		result.releaseDate = releaseDay[id] == NO_DATE ? null : LocalDate.ofEpochDay(releaseDay[id]) + "T00:00:00Z";
+		if (artworkHost[id] != 0) {
+			result.artworkUrl100 = artworkHosts.get(artworkHost[id]) + decode(separatorAfter(offsets[id]) + 1, endOf(id))
+					+ artworkFiles.get(artworkFile[id]);
+		}
+		return result;
+	}
+
+	/**
+	 * Rebuilds the musixmatch track of a row, or returns {@code null} if it has
+	 * none.
+	 *
+	 * @param id
+	 * @return Track
+	 */
+	public Track track(int id) {
+		if (!hasTrack(id)) {
+			return null;
+		}
+		Track track = new Track();
+		track.track_id = trackId[id];
+		track.track_name = trackTitle[id] == null ? trackName(id) : trackTitle[id];
+		track.track_rating = rating[id];
+		track.commontrack_id = commonTrackId[id];
+		track.has_lyrics = hasLyrics[id];
+		track.artist_id = artistId[id];
+		track.artist_name = artists.get(trackArtist[id]);
+		return track;
+	}
+
+	/**
+	 * Returns the epoch day of an ISO-8601 date or date time, taken from its
+	 * {@code yyyy-MM-dd} part like {@code ZonedDateTime.toLocalDate} does, or
+	 * {@link #NO_DATE} if it cannot be read.
+	 *
+	 * @param isoDate
+	 * @return int
+	 */
+	public static int epochDay(String isoDate) {
+		if (isoDate == null || isoDate.length() < 10) {
+			return NO_DATE;
+		}
+		try {
+			int year = Integer.parseInt(isoDate, 0, 4, 10);
+			int month = Integer.parseInt(isoDate, 5, 7, 10);
+			int day = Integer.parseInt(isoDate, 8, 10, 10);
+			return (int) LocalDate.of(year, month, day).toEpochDay();
+		} catch (NumberFormatException | DateTimeException e) {
+			return NO_DATE;
+		}
+	}
+
+	/**
+	 * Formats an epoch day as e.g. "27 Mar 2020", or returns an empty string for
+	 * {@link #NO_DATE}.
+	 *
+	 * @param epochDay
+	 * @return String
+	 */
+	public static String formatDay(int epochDay) {
+		return epochDay == NO_DATE ? "" : DAY_FORMAT.format(LocalDate.ofEpochDay(epochDay));
+	}
+
+	private void grow() {
+		int length = offsets.length * 2;
+		offsets = Arrays.copyOf(offsets, length);
+		artist = Arrays.copyOf(artist, length);
+		country = Arrays.copyOf(country, length);
+		currency = Arrays.copyOf(currency, length);
+		kind = Arrays.copyOf(kind, length);
+		wrapperType = Arrays.copyOf(wrapperType, length);
+		artworkHost = Arrays.copyOf(artworkHost, length);
+		artworkFile = Arrays.copyOf(artworkFile, length);
+		releaseDay = Arrays.copyOf(releaseDay, length);
+		rating = Arrays.copyOf(rating, length);
+		trackId = Arrays.copyOf(trackId, length);
+		commonTrackId = Arrays.copyOf(commonTrackId, length);
+		artistId = Arrays.copyOf(artistId, length);
+		trackArtist = Arrays.copyOf(trackArtist, length);
+		hasLyrics = Arrays.copyOf(hasLyrics, length);
+		trackTitle = Arrays.copyOf(trackTitle, length);
+	}
+
+	private void putString(String value) {
+		if (value == null) {
+			return;
+		}
+		byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+		ensureBytes(encoded.length);
+		System.arraycopy(encoded, 0, bytes, bytesUsed, encoded.length);
+		bytesUsed += encoded.length;
+	}
+
+	private void putByte(byte value) {
+		ensureBytes(1);
+		bytes[bytesUsed++] = value;
+	}
+
+	private void ensureBytes(int more) {
+		if (bytesUsed + more > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, bytesUsed + more));
+		}
+	}
+
+	private int separatorAfter(int start) {
+		int at = start;
+		while (bytes[at] != SEPARATOR) {
+			at++;
+		}
+		return at;
+	}
+
+	private int endOf(int id) {
+		return id + 1 < size ? offsets[id + 1] : bytesUsed;
+	}
+
+	private String decode(int start, int end) {
+		return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	private void checkId(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("row " + id + " of " + size);
+		}
+	}
+
+	private static int nthIndexOf(String text, char c, int n) {
+		int at = -1;
+		for (int i = 0; i < n; i++) {
+			at = text.indexOf(c, at + 1);
+			if (at < 0) {
+				return -1;
+			}
+		}
+		return at;
+	}
+}
@@ -0,0 +1,290 @@
+package cs1302.api;
+
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * @author Shivam Mishra
+ * The app's {@link HttpClient}, set up from the {@code http.*} settings of
+ * {@link AppConfig} and counting what goes through it per host. It has a
+ * connect timeout, a default timeout for requests built without one, a
+ * dedicated pool of daemon threads sized by {@code http.threads}, and keeps
+ * idle connections for {@code http.keepAlive}. {@link #warmUp} opens the
+ * connections to the API hosts at startup, so the first search pays one round
+ * trip instead of a TCP and TLS handshake as well.
+ *
+ * <p>
+ * {@code java.net.http} does not report its connections, so multiplexing is
+ * seen from the requests: per host, the responses by protocol version and the
+ * most requests in flight at once, which over HTTP/2 is the most streams
+ * shared by one connection. Each is a {@code http.<host>.*} gauge in
+ * {@link Metrics}.
+ */
+public class TunedHttpClient extends HttpClient {
+
+	private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+	private static final Log LOG = Log.get(TunedHttpClient.class);
+
+	/** Counters of the requests to one host. */
+	private static final class HostStats {
+		final LongAdder requests = new LongAdder();
+		final LongAdder http2 = new LongAdder();
+		final LongAdder http1 = new LongAdder();
+		final LongAdder timeouts = new LongAdder();
+		final LongAdder failures = new LongAdder();
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger peakInFlight = new AtomicInteger();
+		final AtomicLong warmUpMillis = new AtomicLong(-1);
+
+		void started() {
+			requests.increment();
+			peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+		}
+
+		void finished(HttpResponse<?> response, Throwable error) {
+			inFlight.decrementAndGet();
+			if (response != null) {
+				(response.version() == Version.HTTP_2 ? http2 : http1).increment();
+			} else if (cause(error) instanceof HttpTimeoutException) {
+				timeouts.increment();
+			} else {
+				failures.increment();
+			}
+		}
+	}
+
+	private final HttpClient client;
+	private final ExecutorService executor;
+	private final Duration requestTimeout;
+	private final Map<String, HostStats> hosts = new ConcurrentHashMap<String, HostStats>();
+
+	private TunedHttpClient(HttpClient client, ExecutorService executor, Duration requestTimeout) {
+		this.client = client;
+		this.executor = executor;
+		this.requestTimeout = requestTimeout;
+	}
+
+	/**
+	 * Builds a client from the {@code http.*} settings of {@code config}. The
+	 * keep-alive is a JVM wide setting of {@code java.net.http}, so it is only
+	 * applied when not set on the command line, and only by the first client.
+	 *
+	 * @param config
+	 * @return TunedHttpClient
+	 */
+	public static TunedHttpClient create(AppConfig config) {
+		if (System.getProperty(KEEP_ALIVE_PROPERTY) == null) {
+			System.setProperty(KEEP_ALIVE_PROPERTY, String.valueOf(config.httpKeepAlive().toSeconds()));
+		}
+		AtomicInteger threads = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, config.httpThreads()), runnable -> {
+			Thread thread = new Thread(runnable, "http-client-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL) // always redirects, except from HTTPS to HTTP
+				.connectTimeout(config.httpConnectTimeout()).executor(executor).build();
+		return new TunedHttpClient(client, executor, config.httpRequestTimeout());
+	}
+
+	/**
+	 * Opens a connection to the host of each URL, one per host, by sending it a
+	 * {@code HEAD} request. Whatever status comes back, the connection stays in
+	 * the client's pool for the requests that follow.
+	 *
+	 * @param urls
+	 * @return CompletableFuture<Void> done when every host answered or failed
+	 */
+	public CompletableFuture<Void> warmUp(Collection<String> urls) {
+		Set<URI> origins = new LinkedHashSet<URI>();
+		for (String url : urls) {
+			URI uri = URI.create(url);
+			if (uri.getHost() != null) {
+				origins.add(URI.create(uri.getScheme() + "://" + uri.getRawAuthority() + "/"));
+			}
+		}
+		List<CompletableFuture<?>> warming = new ArrayList<CompletableFuture<?>>();
+		for (URI origin : origins) {
+			long start = System.nanoTime();
+			HttpRequest request = HttpRequest.newBuilder(origin).method("HEAD", HttpRequest.BodyPublishers.noBody())
+					.timeout(connectTimeout().orElse(requestTimeout)).build();
+			warming.add(sendAsync(request, HttpResponse.BodyHandlers.discarding()).handle((response, error) -> {
+				long millis = (System.nanoTime() - start) / 1_000_000;
+				if (error == null) {
+					stats(origin).warmUpMillis.set(millis);
+					LOG.debug("Warmed %s in %d ms", origin.getHost(), millis);
+				} else {
+					LOG.debug("Could not warm %s: %s", origin.getHost(), cause(error).toString());
+				}
+				return null;
+			}));
+		}
+		return CompletableFuture.allOf(warming.toArray(CompletableFuture[]::new));
+	}
+
+	/**
+	 * Returns a line summing up the requests per host, for the log.
+	 *
+	 * @return String
+	 */
+	public String stats() {
+		StringBuilder line = new StringBuilder("http:");
+		hosts.forEach((host, stats) -> line.append(String.format(Locale.ROOT,
+				" %s %d requests (%d h2, %d h1, %d timeouts), at most %d in flight;", host, stats.requests.sum(),
+				stats.http2.sum(), stats.http1.sum(), stats.timeouts.sum(), stats.peakInFlight.get())));
+		return hosts.isEmpty() ? "http: no requests" : line.substring(0, line.length() - 1);
+	}
+
+	@Override
+	public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+			throws IOException, InterruptedException {
+		HttpRequest timed = timed(request);
+		HostStats stats = stats(timed.uri());
+		stats.started();
+		HttpResponse<T> response = null;
+		Throwable error = null;
+		try {
+			response = client.send(timed, handler);
+			return response;
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			error = e;
+			throw e;
+		} finally {
+			stats.finished(response, error);
+		}
+	}
+
+	@Override
+	public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+			HttpResponse.BodyHandler<T> handler) {
+		return sendAsync(request, handler, null);
+	}
+
+	@Override
+	public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+			HttpResponse.BodyHandler<T> handler, HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+		HttpRequest timed = timed(request);
+		HostStats stats = stats(timed.uri());
+		stats.started();
+		CompletableFuture<HttpResponse<T>> response;
+		try {
+			response = client.sendAsync(timed, handler, pushPromiseHandler);
+		} catch (RuntimeException e) {
+			stats.finished(null, e);
+			throw e;
+		}
+		return response.whenComplete(stats::finished);
+	}
+
+	@Override
+	public Optional<CookieHandler> cookieHandler() {
+		return client.cookieHandler();
+	}
+
+	@Override
+	public Optional<Duration> connectTimeout() {
+		return client.connectTimeout();
+	}
+
+	@Override
+	public Redirect followRedirects() {
+		return client.followRedirects();
+	}
+
+	@Override
+	public Optional<ProxySelector> proxy() {
+		return client.proxy();
+	}
+
+	@Override
+	public SSLContext sslContext() {
+		return client.sslContext();
+	}
+
+	@Override
+	public SSLParameters sslParameters() {
+		return client.sslParameters();
+	}
+
+	@Override
+	public Optional<Authenticator> authenticator() {
+		return client.authenticator();
+	}
+
+	@Override
+	public Version version() {
+		return client.version();
+	}
+
+	@Override
+	public Optional<Executor> executor() {
+		return Optional.of(executor);
+	}
+
+	@Override
+	public WebSocket.Builder newWebSocketBuilder() {
+		return client.newWebSocketBuilder();
+	}
+
+	/** Returns the request with the default timeout if it has none. */
+	private HttpRequest timed(HttpRequest request) {
+		if (request.timeout().isPresent()) {
+			return request;
+		}
+		return HttpRequest.newBuilder(request, (name, value) -> true).timeout(requestTimeout).build();
+	}
+
+	private HostStats stats(URI uri) {
+		String host = uri.getHost() == null ? "unknown" : uri.getHost();
+		return hosts.computeIfAbsent(host, name -> {
+			HostStats stats = new HostStats();
+			String prefix = "http." + name + ".";
+			Metrics.gauge(prefix + "requests", stats.requests::sum);
+			Metrics.gauge(prefix + "http2", stats.http2::sum);
+			Metrics.gauge(prefix + "http1", stats.http1::sum);
+			Metrics.gauge(prefix + "timeouts", stats.timeouts::sum);
+			Metrics.gauge(prefix + "failures", stats.failures::sum);
+			Metrics.gauge(prefix + "inFlight", stats.inFlight::get);
+			Metrics.gauge(prefix + "peakInFlight", stats.peakInFlight::get);
+			Metrics.gauge(prefix + "warmUpMillis", stats.warmUpMillis::get);
+			return stats;
+		});
+	}
+
+	private static Throwable cause(Throwable error) {
+		while (error instanceof CompletionException && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+}
@@ -0,0 +1,80 @@
+package cs1302.api;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collections;
+import java.util.Optional;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * @author Shivam Mishra
+ * An {@code HttpResponse<String>} with a fixed body and status 200, so the
+ * benchmarks can hand fixture bodies to the parsing methods that take live
+ * responses. The API classes used it for cached bodies before
+ * {@link ClientCore} decoded those directly.
+ */
+public class CachedResponse implements HttpResponse<String> {
+
+	private final HttpRequest request;
+	private final String body;
+
+	/**
+	 * Constructs a {@code CachedResponse}.
+	 *
+	 * @param request the request that would have produced this response
+	 * @param body    the cached response body
+	 */
+	public CachedResponse(HttpRequest request, String body) {
+		this.request = request;
+		this.body = body;
+	}
+
+	@Override
+	public int statusCode() {
+		return 200;
+	}
+
+	@Override
+	public HttpRequest request() {
+		return request;
+	}
+
+	@Override
+	public Optional<HttpResponse<String>> previousResponse() {
+		return Optional.empty();
+	}
+
+	@Override
+	public HttpHeaders headers() {
+		return HttpHeaders.of(Collections.emptyMap(), (name, value) -> true);
+	}
+
+	@Override
+	public String body() {
+		return body;
+	}
+
+	@Override
+	public Optional<SSLSession> sslSession() {
+		return Optional.empty();
+	}
+
+	@Override
+	public URI uri() {
+		return request.uri();
+	}
+
+	@Override
+	public HttpClient.Version version() {
+		return HttpClient.Version.HTTP_1_1;
+	}
+
+	@Override
+	public String toString() {
+		return "(cached) " + request;
+	}
+}
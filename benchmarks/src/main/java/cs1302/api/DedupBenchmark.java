@@ -0,0 +1,83 @@
+package cs1302.api;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cs1302.api.ITunesApi.ItunesResult;
+
+/**
+ * @author Shivam Mishra
+ * Cost of dropping repeated track names from a page of results, the step
+ * {@code ITunesApi.parseResults} runs on every result. The results are parsed
+ * once up front, so only the set lookups and list growth are measured, for a
+ * page where every track is new and for ones with more repeats, with a
+ * {@code HashSet} of the names and with the hash only {@link DistinctNames}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DedupBenchmark {
+
+	/** Share of the page, in percent, that repeats an earlier track name. */
+	@Param({ "0", "20", "50" })
+	public int duplicatePercent;
+
+	private ItunesResult[] page;
+
+	@Setup
+	public void setup() throws IOException {
+		System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+		List<ItunesResult> distinct = new ITunesApi().parseResults(new StringReader(Fixtures.ITUNES_SEARCH), null);
+		page = new ItunesResult[distinct.size()];
+		int unique = page.length - page.length * duplicatePercent / 100;
+		for (int i = 0; i < page.length; i++) {
+			page[i] = distinct.get(i < unique ? i : i % unique);
+		}
+	}
+
+	@Benchmark
+	public List<ItunesResult> hashSet() {
+		Set<String> uniqueTracks = new HashSet<>();
+		List<ItunesResult> results = new ArrayList<ItunesResult>();
+		for (ItunesResult result : page) {
+			if (uniqueTracks.add(result.trackName)) {
+				results.add(result);
+			}
+		}
+		return results;
+	}
+
+	/** The compact set {@code ITunesApi.parsePage} uses, also across pages. */
+	@Benchmark
+	public List<ItunesResult> distinctNames() {
+		DistinctNames uniqueTracks = new DistinctNames();
+		List<ItunesResult> results = new ArrayList<ItunesResult>();
+		for (ItunesResult result : page) {
+			if (uniqueTracks.add(result.trackName)) {
+				results.add(result);
+			}
+		}
+		return results;
+	}
+}
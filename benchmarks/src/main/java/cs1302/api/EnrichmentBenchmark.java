@@ -0,0 +1,88 @@
+package cs1302.api;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cs1302.api.ITunesApi.ItunesResult;
+import cs1302.api.MusixMatchApi.Track;
+
+/**
+ * @author Shivam Mishra
+ * End to end latency of enriching one page of results, as {@code loadContent}
+ * does after a search, against a {@link MockApiServer} with a simulated round
+ * trip. The response cache is turned off and the rate limit raised, so every
+ * lookup goes over the loopback and the score shows how well the requests
+ * overlap at each concurrency level. Each parameter set runs in its own fork,
+ * since the endpoint properties are read when the API classes load.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnrichmentBenchmark {
+
+	/** Page size of the app, see {@code ApiApp.IMAGE_COUNT}. */
+	private static final int PAGE = 50;
+
+	@Param({ "1", "4", "8", "16" })
+	public int concurrency;
+
+	@Param({ "0", "20" })
+	public long latencyMillis;
+
+	private MockApiServer server;
+	private ITunesApi itunes;
+	private TrackEnricher enricher;
+	private List<ItunesResult> page;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		System.setOut(new PrintStream(PrintStream.nullOutputStream())); // the api logs every call
+		server = MockApiServer.builder().latency(Duration.ofMillis(latencyMillis)).start();
+		System.setProperty("cs1302.api.itunes.url", server.itunesUrl());
+		System.setProperty("cs1302.api.musixmatch.url", server.musixMatchUrl());
+		System.setProperty("cs1302.api.musixmatch.rate", "1000000");
+		System.setProperty("cs1302.api.nocache", "true");
+		itunes = new ITunesApi();
+		enricher = new TrackEnricher(new MusixMatchApi(), concurrency, ApiApp.CONFIG.enrichRequestTimeout(),
+				ApiApp.CONFIG.enrichBatchTimeout());
+		List<ItunesResult> results = itunes.parseResults(new StringReader(Fixtures.ITUNES_SEARCH), null);
+		page = results.subList(0, PAGE);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		server.close();
+	}
+
+	@Benchmark
+	public Track[] enrich() throws InterruptedException {
+		return enricher.enrich(page, null);
+	}
+
+	@Benchmark
+	public Track[] searchAndEnrich() throws InterruptedException {
+		List<ItunesResult> results = itunes.search("benchmark", "music", null);
+		return enricher.enrich(results.subList(0, Math.min(PAGE, results.size())), null);
+	}
+}
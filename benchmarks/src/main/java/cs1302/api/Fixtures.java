@@ -0,0 +1,39 @@
+package cs1302.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author Shivam Mishra
+ * Recorded API responses the benchmarks run against, loaded from
+ * {@code fixtures/} on the classpath. The iTunes search holds 200 song results,
+ * 40 of them other releases of an earlier track, with every field the API
+ * returns; the musixmatch fixtures are a one track search and a lyrics lookup.
+ */
+public final class Fixtures {
+
+	/** Number of results in {@link #ITUNES_SEARCH}. */
+	public static final int ITUNES_RESULTS = 200;
+	/** Number of distinct track names in {@link #ITUNES_SEARCH}. */
+	public static final int ITUNES_DISTINCT = 160;
+
+	public static final String ITUNES_SEARCH = load("itunes-search.json");
+	public static final String MUSIXMATCH_TRACK_SEARCH = load("musixmatch-track-search.json");
+	public static final String MUSIXMATCH_LYRICS = load("musixmatch-lyrics.json");
+
+	private Fixtures() {
+	}
+
+	private static String load(String name) {
+		try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+			if (in == null) {
+				throw new IllegalStateException("missing fixture " + name);
+			}
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException ioe) {
+			throw new UncheckedIOException(ioe);
+		}
+	}
+}
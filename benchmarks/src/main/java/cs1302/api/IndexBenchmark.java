@@ -0,0 +1,190 @@
+package cs1302.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cs1302.api.ITunesApi.ItunesResult;
+import cs1302.api.MusixMatchApi.Track;
+
+/**
+ * @author Shivam Mishra
+ * Latency of answering a search from the local {@link TrackIndex}, which has
+ * to stay well under a millisecond to run before the network on every
+ * keystroke. The index is built from the recorded iTunes results, each copied
+ * under made up words so the vocabulary grows with the size, with a rating on
+ * every track and the recorded lyrics, with a line of made up words, on one
+ * in ten. Queries are an exact track and artist word, a three letter prefix, a
+ * word with one typo, a lyrics phrase and the top rated tracks, each for one
+ * screen of hits. {@code searchBroad} and {@code searchCommonPhrase} are the
+ * worst cases: a word and an artist shared by about a tenth of the tracks, and a
+ * phrase every stored lyrics body holds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexBenchmark {
+
+	/** Hits asked for, see {@code ApiApp.IMAGE_COUNT}. */
+	private static final int LIMIT = 50;
+	private static final String[] SYLLABLES = { "ka", "lo", "mi", "ra", "ne", "so", "tu", "vi", "da", "pe", "zu",
+		"ri", "mo", "sha", "len", "tor" };
+
+	@Param({ "20000", "100000" })
+	public int tracks;
+
+	private File file;
+	private TrackIndex index;
+	private String exact;
+	private String broad;
+	private String prefix;
+	private String fuzzy;
+	private String phrase;
+	private String commonPhrase;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		System.setOut(new PrintStream(PrintStream.nullOutputStream()));
+		file = File.createTempFile("track-index", ".log");
+		file.delete();
+		index = TrackIndex.open(file);
+		List<ItunesResult> recorded = new ITunesApi().parseResults(new StringReader(Fixtures.ITUNES_SEARCH), null);
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost/")).build();
+		String[] lyrics = new MusixMatchApi().getLyrics(new CachedResponse(request, Fixtures.MUSIXMATCH_LYRICS))
+				.split("\\s+");
+		Random random = new Random(1302);
+		List<ItunesResult> batch = new ArrayList<ItunesResult>();
+		List<Track> rated = new ArrayList<Track>();
+		String madeUp = null;
+		String madeUpArtist = null;
+		String[] lastLine = null;
+		for (int i = 0; i < tracks; i++) {
+			ItunesResult base = recorded.get(i % recorded.size());
+			ItunesResult result = new ItunesResult();
+			result.kind = base.kind;
+			result.wrapperType = base.wrapperType;
+			result.country = base.country;
+			result.currency = base.currency;
+			result.releaseDate = base.releaseDate;
+			result.artworkUrl100 = base.artworkUrl100;
+			madeUp = word(random);
+			madeUpArtist = word(random);
+			result.trackName = i < recorded.size() ? base.trackName : base.trackName + " " + madeUp;
+			result.artistName = i < recorded.size() ? base.artistName : base.artistName + " " + madeUpArtist;
+			Track track = new Track();
+			track.track_id = i + 1;
+			track.commontrack_id = i + 1;
+			track.track_name = result.trackName;
+			track.artist_name = result.artistName;
+			track.track_rating = random.nextInt(101);
+			track.has_lyrics = i % 10 == 0 ? 1 : 0;
+			batch.add(result);
+			rated.add(track);
+			if (batch.size() == 1000 || i == tracks - 1) {
+				index.addResults(batch);
+				for (int j = 0; j < batch.size(); j++) {
+					ItunesResult added = batch.get(j);
+					Track found = rated.get(j);
+					index.addTrack(added.trackName, added.artistName, found);
+					if (found.has_lyrics == 1) {
+						lastLine = new String[] { word(random), word(random) };
+						index.addLyrics(found.commontrack_id, vary(lyrics, lastLine));
+					}
+				}
+				batch.clear();
+				rated.clear();
+			}
+		}
+		ItunesResult sample = recorded.get(7);
+		exact = madeUp + " " + madeUpArtist; // the last track added
+		broad = sample.trackName.split("\\s+")[0] + " " + sample.artistName.split("\\s+")[0];
+		prefix = madeUp.substring(0, 3);
+		fuzzy = madeUp.substring(0, 2) + (madeUp.charAt(2) == 'x' ? 'y' : 'x') + madeUp.substring(3);
+		phrase = lastLine[0] + " " + lastLine[1];
+		commonPhrase = lyrics[lyrics.length / 2] + " " + lyrics[lyrics.length / 2 + 1] + " "
+				+ lyrics[lyrics.length / 2 + 2];
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		index.close();
+		file.delete();
+	}
+
+	@Benchmark
+	public List<TrackIndex.Hit> searchExact() {
+		return index.search(exact, LIMIT);
+	}
+
+	@Benchmark
+	public List<TrackIndex.Hit> searchBroad() {
+		return index.search(broad, LIMIT);
+	}
+
+	@Benchmark
+	public List<TrackIndex.Hit> searchPrefix() {
+		return index.search(prefix, LIMIT);
+	}
+
+	@Benchmark
+	public List<TrackIndex.Hit> searchFuzzy() {
+		return index.search(fuzzy, LIMIT);
+	}
+
+	@Benchmark
+	public List<TrackIndex.Hit> searchLyrics() {
+		return index.searchLyrics(phrase, LIMIT);
+	}
+
+	@Benchmark
+	public List<TrackIndex.Hit> searchCommonPhrase() {
+		return index.searchLyrics(commonPhrase, LIMIT);
+	}
+
+	@Benchmark
+	public List<TrackIndex.Hit> topRated() {
+		return index.topRated(LIMIT);
+	}
+
+	/** A made up word of two to four syllables. */
+	private static String word(Random random) {
+		StringBuilder word = new StringBuilder();
+		for (int i = 2 + random.nextInt(3); i > 0; i--) {
+			word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+		}
+		return word.toString();
+	}
+
+	/** The recorded lyrics with a line of made up words a third of the way in. */
+	private static String vary(String[] lyrics, String[] line) {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < lyrics.length; i++) {
+			body.append(lyrics[i]).append(i == lyrics.length / 3 ? "\n" + String.join(" ", line) + "\n" : " ");
+		}
+		return body.toString();
+	}
+}
@@ -0,0 +1,69 @@
+package cs1302.api;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cs1302.api.MusixMatchApi.Track;
+
+/**
+ * @author Shivam Mishra
+ * Per response cost of reading the musixmatch bodies: the rating and lyrics
+ * extraction, the status check every guarded request runs, and the release
+ * date formatting done once per row. Responses are served as
+ * {@link CachedResponse}s so no network is involved.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MusixMatchBenchmark {
+
+	private MusixMatchApi api;
+	private CachedResponse trackSearch;
+	private CachedResponse lyrics;
+
+	@Setup
+	public void setup() {
+		System.setOut(new PrintStream(PrintStream.nullOutputStream())); // getRating prints the whole body
+		api = new MusixMatchApi();
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost/")).build();
+		trackSearch = new CachedResponse(request, Fixtures.MUSIXMATCH_TRACK_SEARCH);
+		lyrics = new CachedResponse(request, Fixtures.MUSIXMATCH_LYRICS);
+	}
+
+	@Benchmark
+	public Track getRating() throws IOException {
+		return api.getRating(trackSearch);
+	}
+
+	@Benchmark
+	public String getLyrics() {
+		return api.getLyrics(lyrics);
+	}
+
+	@Benchmark
+	public int effectiveStatus() {
+		return QuotaGuard.effectiveStatus(trackSearch);
+	}
+
+	@Benchmark
+	public String formatDate() {
+		return TrackStore.formatDay(TrackStore.epochDay("2016-08-19T07:00:00Z"));
+	}
+}
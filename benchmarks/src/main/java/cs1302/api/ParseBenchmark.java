@@ -0,0 +1,77 @@
+package cs1302.api;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cs1302.api.ITunesApi.ItunesResponse;
+import cs1302.api.ITunesApi.ItunesResult;
+
+/**
+ * @author Shivam Mishra
+ * Parse throughput of an iTunes search response. Scores are per result, so
+ * with {@code -prof gc} the {@code gc.alloc.rate.norm} column is the bytes
+ * allocated per result. {@code gsonTree} is the whole body bound with Gson and
+ * deduplicated afterwards, as {@code getImageUriSet} did before it streamed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+	private ITunesApi api;
+
+	@Setup
+	public void setup() {
+		System.setOut(new PrintStream(PrintStream.nullOutputStream())); // the api logs every call
+		api = new ITunesApi();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.ITUNES_RESULTS)
+	public List<ItunesResult> streaming() throws IOException {
+		return api.parseResults(new StringReader(Fixtures.ITUNES_SEARCH), null);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.ITUNES_RESULTS)
+	public List<ItunesResult> gsonTree() {
+		ItunesResponse response = ApiApp.GSON.fromJson(Fixtures.ITUNES_SEARCH, ItunesResponse.class);
+		Set<String> uniqueTracks = new HashSet<>();
+		List<ItunesResult> results = new ArrayList<ItunesResult>();
+		for (ItunesResult result : response.results) {
+			if (uniqueTracks.add(result.trackName)) {
+				results.add(result);
+			}
+		}
+		return results;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Fixtures.ITUNES_RESULTS)
+	public List<ItunesResult> streamingWithCallback() throws IOException {
+		List<ItunesResult> seen = new ArrayList<ItunesResult>();
+		api.parseResults(new StringReader(Fixtures.ITUNES_SEARCH), seen::add); // as search() feeds the list
+		return seen;
+	}
+}